@@ -1,16 +1,26 @@
 package org.example.list;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 
 /**
  * @param <E> - type
  * @author Dasdassand
  */
-public class MyArrayList<E> implements List<E> {
+public class MyArrayList<E> implements List<E>, Serializable {
 
+    private static final long serialVersionUID = 1L;
     private static final int DEFAULT_CAPACITY = 10;
-    private Object[] elementData;
+    /**
+     * Сериализуется вручную, см. {@link #writeObject(ObjectOutputStream)}: пустой хвост массива не пишется
+     */
+    private transient Object[] elementData;
 
     private int size = 0;
 
@@ -347,9 +357,12 @@ public class MyArrayList<E> implements List<E> {
         return new MyArrayList<>((E[]) objects);
     }
 
+    /**
+     * Делит elementData пополам с точными размерами частей, parallelStream раздаёт половины потокам
+     */
     @Override
     public Spliterator<E> spliterator() {
-        return List.super.spliterator();
+        return new ArraySpliterator(0, -1);
     }
 
     private void moveElements(int start) {
@@ -392,6 +405,26 @@ public class MyArrayList<E> implements List<E> {
         return false;
     }
 
+    /**
+     * Пишет size и только занятые элементы
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < size; i++) {
+            out.writeObject(elementData[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (size < 0)
+            throw new InvalidObjectException("Illegal size: " + size);
+        elementData = new Object[Math.max(size, DEFAULT_CAPACITY)];
+        for (int i = 0; i < size; i++) {
+            elementData[i] = in.readObject();
+        }
+    }
+
     /**
      * Знаю, что не очень, но не с++ писать не особо умею
      */
@@ -422,6 +455,65 @@ public class MyArrayList<E> implements List<E> {
         return -1;
     }
 
+    /**
+     * Отрезок [index, fence) массива. fence = -1 - граница берётся из size при первом обращении,
+     * чтобы spliterator, созданный до добавления элементов, видел их
+     */
+    private final class ArraySpliterator implements Spliterator<E> {
+        private int index;
+        private int fence;
+
+        ArraySpliterator(int index, int fence) {
+            this.index = index;
+            this.fence = fence;
+        }
+
+        private int getFence() {
+            if (fence < 0)
+                fence = size;
+            return fence;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int low = index, middle = (low + getFence()) >>> 1;
+            if (low >= middle)
+                return null;
+            index = middle;
+            return new ArraySpliterator(low, middle);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            if (index >= getFence())
+                return false;
+            action.accept((E) elementData[index++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            var data = elementData;
+            int high = getFence();
+            for (int i = index; i < high; i++) {
+                action.accept((E) data[i]);
+            }
+            index = high;
+        }
+
+        @Override
+        public long estimateSize() {
+            return getFence() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
+
     private class MyListIterator implements ListIterator<E> {
         private int cursor;
 
@@ -0,0 +1,439 @@
+package org.example.map;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Кэш на основе {@link MyHashMap} с ограничением по числу элементов или по суммарному весу.
+ * Порядок вытеснения хранится в самих узлах ({@link LinkedNode#before}/{@link LinkedNode#after}),
+ * отдельных списков или очередей нет.
+ * <ul>
+ *     <li>{@link EvictionPolicy#LRU} - все элементы в одном списке по порядку доступа, вытесняется самый давний</li>
+ *     <li>{@link EvictionPolicy#W_TINY_LFU} - новый элемент попадает в маленькое LRU-окно (1% веса),
+ *     вытесненный из окна кандидат проходит в основную часть, только если по {@link FrequencySketch} к нему
+ *     обращались чаще, чем к жертве из основной части. Основная часть - сегментированный LRU: испытательный
+ *     сегмент и защищённый (80%), куда элемент переходит при повторном обращении. Однократный проход по большому
+ *     числу ключей не вымывает часто используемые элементы</li>
+ * </ul>
+ * get, getOrDefault и {@link #getIfPresent(Object)} считают попадания и промахи, вытеснения тоже считаются, см. {@link #stats()}.
+ * containsKey и обход таблицы считаются не обращением. clone возвращает обычный MyHashMap с теми же парами,
+ * сериализация не поддерживается
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public class BoundedCache<K, V> extends MyHashMap<K, V> {
+
+    public enum EvictionPolicy {
+        LRU,
+        W_TINY_LFU
+    }
+
+    /**
+     * Снимок счётчиков
+     *
+     * @param hitCount       - get/getIfPresent нашли ключ
+     * @param missCount      - get/getIfPresent не нашли ключ
+     * @param evictionCount  - сколько элементов вытеснено
+     * @param evictionWeight - их суммарный вес
+     */
+    public record Stats(long hitCount, long missCount, long evictionCount, long evictionWeight) {
+        /**
+         * @return доля попаданий, 1.0 - если обращений не было
+         */
+        public double hitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+    }
+
+    private static final byte WINDOW = 1;
+    private static final byte PROBATION = 2;
+    private static final byte PROTECTED = 3;
+    private static final double WINDOW_PERCENT = 0.01;
+    private static final double PROTECTED_PERCENT = 0.8;
+
+    private final long maximum;
+    /**
+     * null - каждый элемент весит 1
+     */
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final EvictionPolicy policy;
+    /**
+     * null для LRU
+     */
+    private final FrequencySketch sketch;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    /**
+     * В LRU используется только window
+     */
+    private final AccessQueue<K, V> window = new AccessQueue<>(WINDOW);
+    private final AccessQueue<K, V> probation = new AccessQueue<>(PROBATION);
+    private final AccessQueue<K, V> protectedQueue = new AccessQueue<>(PROTECTED);
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long evictionWeight;
+
+    /**
+     * @param maximumSize - максимальное число элементов
+     */
+    public BoundedCache(long maximumSize, EvictionPolicy policy) {
+        this(maximumSize, null, policy);
+    }
+
+    /**
+     * @param maximumWeight - максимальный суммарный вес
+     * @param weigher       - вес пары, неотрицательный. Считается при вставке и при замене значения,
+     *                      в том числе через setValue у пары из entrySet и у курсора
+     */
+    public BoundedCache(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher, EvictionPolicy policy) {
+        if (maximumWeight < 0)
+            throw new IllegalArgumentException();
+        this.maximum = maximumWeight;
+        this.weigher = weigher;
+        this.policy = Objects.requireNonNull(policy);
+        if (policy == EvictionPolicy.LRU) {
+            this.windowMaximum = maximumWeight;
+            this.protectedMaximum = 0;
+            this.sketch = null;
+        } else {
+            this.windowMaximum = Math.max(maximumWeight > 0 ? 1 : 0, (long) (maximumWeight * WINDOW_PERCENT));
+            this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_PERCENT);
+            this.sketch = new FrequencySketch();
+        }
+    }
+
+    /**
+     * Как {@link #get(Object)}, но при промахе возвращает null
+     */
+    public V getIfPresent(Object key) {
+        var node = lookup(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * @return значение или NoSuchElementException, как в {@link MyHashMap#get(Object)}
+     */
+    @Override
+    public V get(Object key) {
+        var node = lookup(key);
+        if (node == null)
+            throw new NoSuchElementException();
+        return node.value;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        var node = lookup(key);
+        return node == null ? defaultValue : node.value;
+    }
+
+    /**
+     * По одному ключу: каждый промах нужно учесть в статистике и частотах TinyLFU
+     */
+    @Override
+    public int getAll(K[] keys, V[] out) {
+        if (out.length < keys.length)
+            throw new IllegalArgumentException();
+        int found = 0;
+        for (int i = 0; i < keys.length; i++) {
+            var node = lookup(keys[i]);
+            out[i] = node == null ? null : node.value;
+            if (node != null)
+                found++;
+        }
+        return found;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        window.clear();
+        probation.clear();
+        protectedQueue.clear();
+    }
+
+    public Stats stats() {
+        return new Stats(hitCount, missCount, evictionCount, evictionWeight);
+    }
+
+    /**
+     * @return суммарный вес элементов (без weigher совпадает с size)
+     */
+    public long getWeightedSize() {
+        return window.weight + probation.weight + protectedQueue.weight;
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    private Node<K, V> lookup(Object key) {
+        var node = getEntry(key);
+        if (node == null) {
+            missCount++;
+            if (sketch != null)
+                sketch.increment(hash(key));
+            return null;
+        }
+        hitCount++;
+        afterNodeAccess(node);
+        return node;
+    }
+
+    @Override
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> next) {
+        var node = new LinkedNode<>(hash, key, value, next);
+        linkNewNode(node);
+        return node;
+    }
+
+    @Override
+    BinaryTreeNode<K, V> newTreeNode(int hash, K key, V value, Node<K, V> next) {
+        var node = super.newTreeNode(hash, key, value, next);
+        linkNewNode(node);
+        return node;
+    }
+
+    @Override
+    Node<K, V> replacementNode(Node<K, V> node, Node<K, V> next) {
+        var replacement = new LinkedNode<>(node.hash, node.key, node.value, next);
+        transferLinks((LinkedNode<K, V>) node, replacement);
+        return replacement;
+    }
+
+    @Override
+    BinaryTreeNode<K, V> replacementTreeNode(Node<K, V> node, Node<K, V> next) {
+        var replacement = super.replacementTreeNode(node, next);
+        transferLinks((LinkedNode<K, V>) node, replacement);
+        return replacement;
+    }
+
+    /**
+     * Обращение: окно и защищённый сегмент - в конец своего списка, испытательный сегмент - в защищённый.
+     * После замены значения вес пересчитывается
+     */
+    @Override
+    void afterNodeAccess(Node<K, V> node) {
+        var linked = (LinkedNode<K, V>) node;
+        if (sketch != null)
+            sketch.increment(linked.hash);
+        switch (linked.queue) {
+            case WINDOW -> window.moveToLast(linked);
+            case PROTECTED -> protectedQueue.moveToLast(linked);
+            case PROBATION -> {
+                probation.unlink(linked);
+                protectedQueue.linkLast(linked);
+                while (protectedQueue.weight > protectedMaximum && protectedQueue.head != linked) {
+                    var demoted = protectedQueue.head;
+                    protectedQueue.unlink(demoted);
+                    probation.linkLast(demoted);
+                }
+            }
+            default -> {
+            }
+        }
+        if (weigher != null) {
+            int weight = weigh(linked.key, linked.value);
+            if (weight != linked.weight) {
+                queueOf(linked).weight += weight - linked.weight;
+                linked.weight = weight;
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Без weigher вес пары от значения не зависит, и обход отдаёт сами узлы
+     */
+    @Override
+    boolean tracksEntryWrites() {
+        return weigher != null;
+    }
+
+    @Override
+    void afterNodeInsertion() {
+        if (sketch != null)
+            sketch.ensureCapacity(Math.min(maximum, size()));
+        evict();
+    }
+
+    @Override
+    void afterNodeRemoval(Node<K, V> node) {
+        var linked = (LinkedNode<K, V>) node;
+        var queue = queueOf(linked);
+        if (queue != null)
+            queue.unlink(linked);
+    }
+
+    private void linkNewNode(LinkedNode<K, V> node) {
+        node.weight = weigh(node.key, node.value);
+        window.linkLast(node);
+        if (sketch != null)
+            sketch.increment(node.hash);
+    }
+
+    private void transferLinks(LinkedNode<K, V> from, LinkedNode<K, V> to) {
+        to.weight = from.weight;
+        var queue = queueOf(from);
+        if (queue != null)
+            queue.replace(from, to);
+    }
+
+    private int weigh(K key, V value) {
+        if (weigher == null)
+            return 1;
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0)
+            throw new IllegalArgumentException("Negative weight: " + weight);
+        return weight;
+    }
+
+    private AccessQueue<K, V> queueOf(LinkedNode<K, V> node) {
+        return switch (node.queue) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            case PROTECTED -> protectedQueue;
+            default -> null;
+        };
+    }
+
+    /**
+     * Вытеснение до тех пор, пока вес не уложится в maximum
+     */
+    private void evict() {
+        if (policy == EvictionPolicy.W_TINY_LFU) {
+            while (window.weight > windowMaximum) {
+                var candidate = window.head;
+                window.unlink(candidate);
+                probation.linkLast(candidate);
+                admit(candidate);
+            }
+        }
+        while (getWeightedSize() > maximum) {
+            var victim = probation.head != null ? probation.head
+                    : protectedQueue.head != null ? protectedQueue.head : window.head;
+            evictNode(victim);
+        }
+    }
+
+    /**
+     * Кандидат из окна уже стоит в конце испытательного сегмента. Пока основная часть переполнена,
+     * он соревнуется по частоте с самым давним элементом основной части: проигравший вытесняется
+     */
+    private void admit(LinkedNode<K, V> candidate) {
+        int candidateFrequency = sketch.frequency(candidate.hash);
+        while (probation.weight + protectedQueue.weight > maximum - windowMaximum) {
+            var victim = probation.head != candidate ? probation.head : protectedQueue.head;
+            if (victim == null)
+                return;
+            if (candidateFrequency > sketch.frequency(victim.hash)) {
+                evictNode(victim);
+            } else {
+                evictNode(candidate);
+                return;
+            }
+        }
+    }
+
+    private void evictNode(LinkedNode<K, V> node) {
+        evictionCount++;
+        evictionWeight += node.weight;
+        remove(node.key);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException(getClass().getName());
+    }
+
+    /**
+     * Двусвязный список по полям before/after узлов. Сам список хранит только концы и суммарный вес
+     */
+    private static final class AccessQueue<K, V> {
+        private final byte id;
+        private LinkedNode<K, V> head;
+        private LinkedNode<K, V> tail;
+        private long weight;
+
+        AccessQueue(byte id) {
+            this.id = id;
+        }
+
+        void linkLast(LinkedNode<K, V> node) {
+            node.queue = id;
+            node.before = tail;
+            node.after = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.after = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void unlink(LinkedNode<K, V> node) {
+            var before = node.before;
+            var after = node.after;
+            if (before == null) {
+                head = after;
+            } else {
+                before.after = after;
+            }
+            if (after == null) {
+                tail = before;
+            } else {
+                after.before = before;
+            }
+            node.before = node.after = null;
+            node.queue = 0;
+            weight -= node.weight;
+        }
+
+        void moveToLast(LinkedNode<K, V> node) {
+            if (tail != node) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+
+        /**
+         * Узел to встаёт в список на место from
+         */
+        void replace(LinkedNode<K, V> from, LinkedNode<K, V> to) {
+            to.queue = id;
+            to.before = from.before;
+            to.after = from.after;
+            if (to.before == null) {
+                head = to;
+            } else {
+                to.before.after = to;
+            }
+            if (to.after == null) {
+                tail = to;
+            } else {
+                to.after.before = to;
+            }
+            from.before = from.after = null;
+            from.queue = 0;
+        }
+
+        void clear() {
+            head = tail = null;
+            weight = 0;
+        }
+    }
+}
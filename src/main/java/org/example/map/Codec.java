@@ -0,0 +1,104 @@
+package org.example.map;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Перевод объекта в байты и обратно для таблиц, которые хранят данные вне кучи ({@link OffHeapHashMap}).
+ * Ключи в таких таблицах сравниваются по байтам, поэтому кодек ключа должен давать для равных объектов
+ * одинаковые байты
+ *
+ * @param <T>
+ * @author Dasdassand
+ */
+public interface Codec<T> {
+
+    /**
+     * @param value
+     * @return сколько байт займёт value
+     */
+    int sizeOf(T value);
+
+    /**
+     * Пишет ровно {@link #sizeOf(Object)} байт с текущей позиции buffer
+     */
+    void write(ByteBuffer buffer, T value);
+
+    /**
+     * Читает length байт с текущей позиции buffer
+     */
+    T read(ByteBuffer buffer, int length);
+
+    Codec<Integer> INTEGER = new Codec<>() {
+        @Override
+        public int sizeOf(Integer value) {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, Integer value) {
+            buffer.putInt(value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer, int length) {
+            return buffer.getInt();
+        }
+    };
+
+    Codec<Long> LONG = new Codec<>() {
+        @Override
+        public int sizeOf(Long value) {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, Long value) {
+            buffer.putLong(value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer, int length) {
+            return buffer.getLong();
+        }
+    };
+
+    /**
+     * Строка в UTF-8. sizeOf считает длину без кодирования, одиночный суррогат getBytes заменяет на '?' - 1 байт
+     */
+    Codec<String> STRING = new Codec<>() {
+        @Override
+        public int sizeOf(String value) {
+            int size = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    size++;
+                } else if (c < 0x800) {
+                    size += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    size += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    size++;
+                } else {
+                    size += 3;
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, String value) {
+            buffer.put(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String read(ByteBuffer buffer, int length) {
+            var bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+}
@@ -0,0 +1,118 @@
+package org.example.map;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики по ключам для многих пишущих потоков. Каждому ключу - своя ячейка {@link LongAdder} в
+ * {@link ConcurrentMyHashMap}: прибавление к существующему ключу - это get без блокировок и add в ячейку,
+ * а сам LongAdder при конфликте раскладывает горячий ключ по нескольким полосам, так что потоки не бьются
+ * за одно поле. Блокировка корзины берётся только при первом появлении ключа, см.
+ * {@link ConcurrentMyHashMap#computeIfAbsent}.
+ * <p>
+ * Чтения ({@link #sum(Object)}, {@link #total()}, {@link #snapshot()}) слабо согласованы: прибавления,
+ * идущие одновременно с ними, могут попасть, а могут не попасть в результат. null ключом быть не может
+ *
+ * @param <K>
+ * @author Dasdassand
+ */
+public class ConcurrentCounterMap<K> {
+    private final ConcurrentMyHashMap<K, LongAdder> cells;
+
+    public ConcurrentCounterMap() {
+        this.cells = new ConcurrentMyHashMap<>();
+    }
+
+    /**
+     * @param expectedKeys сколько ключей поместится без resize
+     */
+    public ConcurrentCounterMap(int expectedKeys) {
+        this.cells = new ConcurrentMyHashMap<>(expectedKeys);
+    }
+
+    public void increment(K key) {
+        cell(key).increment();
+    }
+
+    public void decrement(K key) {
+        cell(key).decrement();
+    }
+
+    public void add(K key, long delta) {
+        cell(key).add(delta);
+    }
+
+    /**
+     * @return сумма по ключу, 0 - если ключа нет
+     */
+    public long sum(Object key) {
+        var cell = cells.get(key);
+        return cell == null ? 0 : cell.sum();
+    }
+
+    /**
+     * Обнуляет счётчик, не удаляя ячейку: прибавления, идущие одновременно, не теряются,
+     * а попадают либо в результат, либо в новый отсчёт
+     *
+     * @return сумма до обнуления
+     */
+    public long sumThenReset(Object key) {
+        var cell = cells.get(key);
+        return cell == null ? 0 : cell.sumThenReset();
+    }
+
+    /**
+     * Удаляет ключ вместе с ячейкой. Прибавление, которое взяло ячейку до удаления и пишет в неё после,
+     * потеряется - если это важно, используйте {@link #sumThenReset(Object)}
+     *
+     * @return сумма удалённого ключа, 0 - если ключа не было
+     */
+    public long remove(Object key) {
+        var cell = cells.remove(key);
+        return cell == null ? 0 : cell.sum();
+    }
+
+    /**
+     * @return сумма по всем ключам
+     */
+    public long total() {
+        long total = 0;
+        for (LongAdder cell : cells.values()) {
+            total += cell.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return кол-во ключей, в том числе с нулевой суммой
+     */
+    public int size() {
+        return cells.size();
+    }
+
+    public void clear() {
+        cells.clear();
+    }
+
+    /**
+     * Выгрузка для экспорта: обычная однопоточная карта ключ - сумма, размер таблицы подбирается сразу
+     *
+     * @return независимая от счётчиков копия
+     */
+    public MyHashMap<K, Long> snapshot() {
+        MyHashMap<K, Long> snapshot = MyHashMap.<K, Long>builder().expectedSize(cells.size()).build();
+        for (var entry : cells.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Ячейка ключа: сначала чтение без блокировок, computeIfAbsent - только для нового ключа
+     */
+    private LongAdder cell(K key) {
+        var cell = cells.get(key);
+        if (cell == null)
+            cell = cells.computeIfAbsent(key, k -> new LongAdder());
+        return cell;
+    }
+}
@@ -0,0 +1,1061 @@
+package org.example.map;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Потокобезопасный вариант {@link MyHashMap} с той же моделью корзин: таблица из цепочек {@link Node}.
+ * <ul>
+ *     <li>get не берёт блокировок: ячейки таблицы читаются через VarHandle, поля узла volatile</li>
+ *     <li>вставка в пустую корзину - CAS ячейки, в непустую - под synchronized на первом узле корзины</li>
+ *     <li>resize делают все пишущие потоки вместе: каждый забирает себе отрезок корзин через {@link #transferIndex},
+ *     перенесённая корзина заменяется на {@link ForwardingNode}, который отправляет читателей в новую таблицу</li>
+ *     <li>размер считается в {@link LongAdder}, чтобы потоки не бились за один счётчик</li>
+ * </ul>
+ * Корзины не превращаются в деревья: под блокировкой корзины дерево пришлось бы защищать ещё и от читателей.
+ * null нельзя использовать ни как ключ, ни как значение - get отсутствующего ключа возвращает null
+ * (исключение, как в MyHashMap, здесь бесполезно: ключ может пропасть между containsKey и get).
+ * containsValue, как и в MyHashMap, сравнивает значения по ссылке.
+ * Итераторы слабо согласованы: не бросают ConcurrentModificationException и видят часть одновременных изменений
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public class ConcurrentMyHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    /**
+     * Минимальный отрезок корзин, который поток забирает себе при переносе
+     */
+    private static final int MIN_TRANSFER_STRIDE = 16;
+    /**
+     * Во время resize в старших битах {@link #sizeCtl} лежит метка длины таблицы, в младших - число помощников + 1
+     */
+    private static final int RESIZE_STAMP_BITS = 16;
+    private static final int RESIZE_STAMP_SHIFT = 32 - RESIZE_STAMP_BITS;
+    private static final int MAX_RESIZERS = (1 << (32 - RESIZE_STAMP_BITS)) - 1;
+    /**
+     * hash служебных узлов. У обычных узлов hash неотрицательный, см. {@link #spread(int)}
+     */
+    private static final int MOVED = -1;
+    private static final int RESERVED = -2;
+    private static final int HASH_BITS = 0x7fffffff;
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private static final VarHandle TABLE_ELEMENT = MethodHandles.arrayElementVarHandle(Node[].class);
+    private static final VarHandle SIZE_CTL;
+    private static final VarHandle TRANSFER_INDEX;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            SIZE_CTL = lookup.findVarHandle(ConcurrentMyHashMap.class, "sizeCtl", int.class);
+            TRANSFER_INDEX = lookup.findVarHandle(ConcurrentMyHashMap.class, "transferIndex", int.class);
+        } catch (ReflectiveOperationException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+
+    /**
+     * Создаётся при первой вставке
+     */
+    private volatile Node<K, V>[] table;
+    /**
+     * Новая таблица, пока идёт resize
+     */
+    private volatile Node<K, V>[] nextTable;
+    /**
+     * &gt; 0 - порог следующего resize (или длина будущей таблицы, пока её нет),
+     * -1 - таблица создаётся, другое отрицательное - идёт resize, см. {@link #RESIZE_STAMP_BITS}
+     */
+    private volatile int sizeCtl;
+    /**
+     * Все корзины старой таблицы с индексом меньше этого ещё никто не взял на перенос
+     */
+    private volatile int transferIndex;
+    private final LongAdder count = new LongAdder();
+
+    private transient Set<K> keySet;
+    private transient Collection<V> values;
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    public ConcurrentMyHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity сколько элементов можно вставить без resize
+     */
+    public ConcurrentMyHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException();
+        this.sizeCtl = tableSizeFor(initialCapacity + (initialCapacity >>> 1) + 1);
+    }
+
+    @Override
+    public int size() {
+        long sum = count.sum();
+        return sum < 0 ? 0 : (int) Math.min(sum, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count.sum() <= 0;
+    }
+
+    /**
+     * @param key
+     * @return значение или null, если ключа нет
+     */
+    @Override
+    public V get(Object key) {
+        var node = getNode(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getNode(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        Objects.requireNonNull(value);
+        var tab = table;
+        if (tab != null) {
+            var traverser = new Traverser<>(tab, tab.length, 0, tab.length);
+            for (Node<K, V> node; (node = traverser.advance()) != null; ) {
+                if (node.value == value)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return старое значение или null
+     */
+    @Override
+    public V put(K key, V value) {
+        return putValue(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putValue(key, value, true);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        tryPresize(m.size());
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            putValue(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    /**
+     * @return удалённое значение или null
+     */
+    @Override
+    public V remove(Object key) {
+        return replaceNode(key, null, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Objects.requireNonNull(key);
+        return value != null && replaceNode(key, null, value) != null;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        return replaceNode(key, newValue, oldValue) != null;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        return replaceNode(key, value, null);
+    }
+
+    /**
+     * Атомарно: mappingFunction вызывается не больше одного раза на ключ, остальные потоки с этим ключом ждут.
+     * Пустая корзина на время вычисления занимается {@link ReservationNode}.
+     * Функция не должна менять эту же таблицу
+     *
+     * @return текущее (существующее или вычисленное) значение, null - если функция вернула null
+     */
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(mappingFunction);
+        int hash = spread(key.hashCode());
+        V value = null;
+        int binCount = 0;
+        for (var tab = table; ; ) {
+            Node<K, V> first;
+            int n, index;
+            if (tab == null || (n = tab.length) == 0) {
+                tab = initTable();
+            } else if ((first = tabAt(tab, index = (n - 1) & hash)) == null) {
+                var reservation = new ReservationNode<K, V>();
+                synchronized (reservation) {
+                    if (casTabAt(tab, index, null, reservation)) {
+                        binCount = 1;
+                        Node<K, V> node = null;
+                        try {
+                            if ((value = mappingFunction.apply(key)) != null)
+                                node = new Node<>(hash, key, value, null);
+                        } finally {
+                            setTabAt(tab, index, node);
+                        }
+                    }
+                }
+                if (binCount != 0)
+                    break;
+            } else if (first.hash == MOVED) {
+                tab = helpTransfer(tab, first);
+            } else if (first.hash == hash && key.equals(first.key) && (value = first.value) != null) {
+                return value;
+            } else {
+                boolean added = false;
+                synchronized (first) {
+                    if (tabAt(tab, index) == first) {
+                        if (first.hash < 0)
+                            throw new IllegalStateException("Recursive update");
+                        binCount = 1;
+                        for (var node = first; ; ++binCount) {
+                            if (node.hash == hash && key.equals(node.key)) {
+                                value = node.value;
+                                break;
+                            }
+                            var last = node;
+                            if ((node = node.next) == null) {
+                                if ((value = mappingFunction.apply(key)) != null) {
+                                    if (last.next != null)
+                                        throw new IllegalStateException("Recursive update");
+                                    added = true;
+                                    last.next = new Node<>(hash, key, value, null);
+                                }
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    if (!added)
+                        return value;
+                    break;
+                }
+            }
+        }
+        if (value != null)
+            addCount(1L, binCount);
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        long delta = 0L;
+        int index = 0;
+        var tab = table;
+        while (tab != null && index < tab.length) {
+            var first = tabAt(tab, index);
+            if (first == null) {
+                ++index;
+            } else if (first.hash == MOVED) {
+                tab = helpTransfer(tab, first);
+                index = 0;
+            } else {
+                synchronized (first) {
+                    if (tabAt(tab, index) == first) {
+                        if (first.hash < 0)
+                            throw new IllegalStateException("Recursive update");
+                        for (var node = first; node != null; node = node.next) {
+                            --delta;
+                        }
+                        setTabAt(tab, index++, null);
+                    }
+                }
+            }
+        }
+        if (delta != 0L)
+            addCount(delta, -1);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        if (keySet == null)
+            keySet = new KeySet();
+        return keySet;
+    }
+
+    @Override
+    public Collection<V> values() {
+        if (values == null)
+            values = new Values();
+        return values;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    /**
+     * Отбрасывает знаковый бит: отрицательные hash заняты служебными узлами
+     */
+    static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) & HASH_BITS;
+    }
+
+    private Node<K, V> getNode(Object key) {
+        Objects.requireNonNull(key);
+        int hash = spread(key.hashCode());
+        var tab = table;
+        if (tab == null)
+            return null;
+        var first = tabAt(tab, (tab.length - 1) & hash);
+        if (first == null)
+            return null;
+        if (first.hash == hash) {
+            if (first.key == key || key.equals(first.key))
+                return first;
+        } else if (first.hash < 0) {
+            return first.find(hash, key);
+        }
+        for (var node = first.next; node != null; node = node.next) {
+            if (node.hash == hash && (node.key == key || key.equals(node.key)))
+                return node;
+        }
+        return null;
+    }
+
+    /**
+     * @param onlyIfAbsent true - существующее значение не заменяется
+     * @return старое значение или null
+     */
+    private V putValue(K key, V value, boolean onlyIfAbsent) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        int hash = spread(key.hashCode());
+        int binCount = 0;
+        for (var tab = table; ; ) {
+            Node<K, V> first;
+            int n, index;
+            if (tab == null || (n = tab.length) == 0) {
+                tab = initTable();
+            } else if ((first = tabAt(tab, index = (n - 1) & hash)) == null) {
+                if (casTabAt(tab, index, null, new Node<>(hash, key, value, null)))
+                    break;
+            } else if (first.hash == MOVED) {
+                tab = helpTransfer(tab, first);
+            } else if (onlyIfAbsent && first.hash == hash && key.equals(first.key)) {
+                return first.value;
+            } else {
+                V oldValue = null;
+                synchronized (first) {
+                    if (tabAt(tab, index) == first) {
+                        if (first.hash < 0)
+                            throw new IllegalStateException("Recursive update");
+                        binCount = 1;
+                        for (var node = first; ; ++binCount) {
+                            if (node.hash == hash && (node.key == key || key.equals(node.key))) {
+                                oldValue = node.value;
+                                if (!onlyIfAbsent)
+                                    node.value = value;
+                                break;
+                            }
+                            var last = node;
+                            if ((node = node.next) == null) {
+                                last.next = new Node<>(hash, key, value, null);
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    if (oldValue != null)
+                        return oldValue;
+                    break;
+                }
+            }
+        }
+        addCount(1L, binCount);
+        return null;
+    }
+
+    /**
+     * Общая часть remove и replace
+     *
+     * @param value         новое значение, null - удалить узел
+     * @param expectedValue если не null - операция выполняется, только если текущее значение равно ему
+     * @return старое значение или null, если ничего не изменилось
+     */
+    private V replaceNode(Object key, V value, Object expectedValue) {
+        Objects.requireNonNull(key);
+        int hash = spread(key.hashCode());
+        for (var tab = table; ; ) {
+            Node<K, V> first;
+            int n, index;
+            if (tab == null || (n = tab.length) == 0
+                    || (first = tabAt(tab, index = (n - 1) & hash)) == null)
+                return null;
+            if (first.hash == MOVED) {
+                tab = helpTransfer(tab, first);
+                continue;
+            }
+            V oldValue = null;
+            boolean validated = false;
+            synchronized (first) {
+                if (tabAt(tab, index) == first) {
+                    if (first.hash < 0)
+                        throw new IllegalStateException("Recursive update");
+                    validated = true;
+                    for (Node<K, V> node = first, previous = null; node != null; previous = node, node = node.next) {
+                        if (node.hash == hash && (node.key == key || key.equals(node.key))) {
+                            var current = node.value;
+                            if (expectedValue == null || expectedValue == current || expectedValue.equals(current)) {
+                                oldValue = current;
+                                if (value != null)
+                                    node.value = value;
+                                else if (previous != null)
+                                    previous.next = node.next;
+                                else
+                                    setTabAt(tab, index, node.next);
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            if (validated) {
+                if (oldValue != null && value == null)
+                    addCount(-1L, -1);
+                return oldValue;
+            }
+        }
+    }
+
+    /**
+     * Создание таблицы при первой вставке. Создаёт один поток, остальные ждут
+     */
+    private Node<K, V>[] initTable() {
+        Node<K, V>[] tab;
+        int sc;
+        while ((tab = table) == null || tab.length == 0) {
+            if ((sc = sizeCtl) < 0) {
+                Thread.yield();
+            } else if (SIZE_CTL.compareAndSet(this, sc, -1)) {
+                try {
+                    if ((tab = table) == null || tab.length == 0) {
+                        int n = sc > 0 ? sc : DEFAULT_INITIAL_CAPACITY;
+                        table = tab = (Node<K, V>[]) new Node[n];
+                        sc = n - (n >>> 2);
+                    }
+                } finally {
+                    sizeCtl = sc;
+                }
+                break;
+            }
+        }
+        return tab;
+    }
+
+    /**
+     * Изменение размера и, для вставок, проверка порога resize. Если resize уже идёт - поток к нему присоединяется
+     *
+     * @param delta
+     * @param binCount &lt; 0 - resize не проверять
+     */
+    private void addCount(long delta, int binCount) {
+        count.add(delta);
+        if (binCount < 0)
+            return;
+        Node<K, V>[] tab, next;
+        int n, sc;
+        while (count.sum() >= (sc = sizeCtl) && (tab = table) != null && (n = tab.length) < MAXIMUM_CAPACITY) {
+            int stamp = resizeStamp(n) << RESIZE_STAMP_SHIFT;
+            if (sc < 0) {
+                if ((sc & ~MAX_RESIZERS) != stamp || sc == stamp + MAX_RESIZERS || sc == stamp + 1
+                        || (next = nextTable) == null || transferIndex <= 0)
+                    break;
+                if (SIZE_CTL.compareAndSet(this, sc, sc + 1))
+                    transfer(tab, next);
+            } else if (SIZE_CTL.compareAndSet(this, sc, stamp + 2)) {
+                transfer(tab, null);
+            }
+        }
+    }
+
+    /**
+     * Поток наткнулся на {@link ForwardingNode}: вместо ожидания помогает переносить корзины
+     *
+     * @return таблица, в которой нужно повторить операцию
+     */
+    private Node<K, V>[] helpTransfer(Node<K, V>[] tab, Node<K, V> first) {
+        Node<K, V>[] next;
+        int sc;
+        if (tab != null && first instanceof ForwardingNode<K, V> forwarding && (next = forwarding.nextTable) != null) {
+            int stamp = resizeStamp(tab.length) << RESIZE_STAMP_SHIFT;
+            while (next == nextTable && table == tab && (sc = sizeCtl) < 0) {
+                if ((sc & ~MAX_RESIZERS) != stamp || sc == stamp + MAX_RESIZERS || sc == stamp + 1 || transferIndex <= 0)
+                    break;
+                if (SIZE_CTL.compareAndSet(this, sc, sc + 1)) {
+                    transfer(tab, next);
+                    break;
+                }
+            }
+            return next;
+        }
+        return table;
+    }
+
+    /**
+     * Заранее увеличивает таблицу под size элементов (для putAll)
+     */
+    private void tryPresize(int size) {
+        int c = size >= (MAXIMUM_CAPACITY >>> 1) ? MAXIMUM_CAPACITY : tableSizeFor(size + (size >>> 1) + 1);
+        int sc;
+        while ((sc = sizeCtl) >= 0) {
+            var tab = table;
+            int n;
+            if (tab == null || (n = tab.length) == 0) {
+                n = Math.max(sc, c);
+                if (SIZE_CTL.compareAndSet(this, sc, -1)) {
+                    try {
+                        if (table == tab) {
+                            table = (Node<K, V>[]) new Node[n];
+                            sc = n - (n >>> 2);
+                        }
+                    } finally {
+                        sizeCtl = sc;
+                    }
+                }
+            } else if (c <= sc || n >= MAXIMUM_CAPACITY) {
+                break;
+            } else if (tab == table) {
+                int stamp = resizeStamp(n) << RESIZE_STAMP_SHIFT;
+                if (SIZE_CTL.compareAndSet(this, sc, stamp + 2))
+                    transfer(tab, null);
+            }
+        }
+    }
+
+    /**
+     * Перенос корзин в таблицу вдвое больше. Поток берёт отрезок корзин с конца таблицы, переносит их
+     * под блокировкой корзины и ставит на их место {@link ForwardingNode}. Узлы корзины делятся на две
+     * цепочки (индекс i и i + n) по одному биту hash, хвост с одинаковым битом переиспользуется без копирования.
+     * Последний вышедший поток перепроверяет таблицу и публикует новую
+     *
+     * @param tab
+     * @param next null - новую таблицу создаёт этот поток
+     */
+    private void transfer(Node<K, V>[] tab, Node<K, V>[] next) {
+        int n = tab.length;
+        int stride = NCPU > 1 ? (n >>> 3) / NCPU : n;
+        if (stride < MIN_TRANSFER_STRIDE)
+            stride = MIN_TRANSFER_STRIDE;
+        if (next == null) {
+            try {
+                next = (Node<K, V>[]) new Node[n << 1];
+            } catch (OutOfMemoryError error) {
+                sizeCtl = Integer.MAX_VALUE;
+                return;
+            }
+            nextTable = next;
+            transferIndex = n;
+        }
+        var forwarding = new ForwardingNode<>(next);
+        boolean advance = true;
+        boolean finishing = false;
+        for (int i = 0, bound = 0; ; ) {
+            while (advance) {
+                int nextIndex, nextBound;
+                if (--i >= bound || finishing) {
+                    advance = false;
+                } else if ((nextIndex = transferIndex) <= 0) {
+                    i = -1;
+                    advance = false;
+                } else if (TRANSFER_INDEX.compareAndSet(this, nextIndex,
+                        nextBound = nextIndex > stride ? nextIndex - stride : 0)) {
+                    bound = nextBound;
+                    i = nextIndex - 1;
+                    advance = false;
+                }
+            }
+            if (i < 0) {
+                if (finishing) {
+                    nextTable = null;
+                    table = next;
+                    sizeCtl = (n << 1) - (n >>> 1);
+                    return;
+                }
+                int sc = sizeCtl;
+                if (SIZE_CTL.compareAndSet(this, sc, sc - 1)) {
+                    if (sc - 2 != resizeStamp(n) << RESIZE_STAMP_SHIFT)
+                        return;
+                    finishing = advance = true;
+                    i = n;
+                }
+                continue;
+            }
+            var first = tabAt(tab, i);
+            if (first == null) {
+                advance = casTabAt(tab, i, null, forwarding);
+            } else if (first.hash == MOVED) {
+                advance = true;
+            } else {
+                synchronized (first) {
+                    if (tabAt(tab, i) == first) {
+                        if (first.hash < 0)
+                            throw new IllegalStateException("Recursive update");
+                        splitBucket(tab, next, i, first);
+                        setTabAt(tab, i, forwarding);
+                        advance = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Делит корзину i на корзины i и i + n новой таблицы. Старые узлы не меняются: читатели старой таблицы
+     * могут идти по ним прямо сейчас
+     */
+    private void splitBucket(Node<K, V>[] tab, Node<K, V>[] next, int i, Node<K, V> first) {
+        int n = tab.length;
+        int runBit = first.hash & n;
+        var lastRun = first;
+        for (var node = first.next; node != null; node = node.next) {
+            int bit = node.hash & n;
+            if (bit != runBit) {
+                runBit = bit;
+                lastRun = node;
+            }
+        }
+        Node<K, V> low = runBit == 0 ? lastRun : null;
+        Node<K, V> high = runBit == 0 ? null : lastRun;
+        for (var node = first; node != lastRun; node = node.next) {
+            if ((node.hash & n) == 0)
+                low = new Node<>(node.hash, node.key, node.value, low);
+            else
+                high = new Node<>(node.hash, node.key, node.value, high);
+        }
+        setTabAt(next, i, low);
+        setTabAt(next, i + n, high);
+    }
+
+    private static int resizeStamp(int n) {
+        return Integer.numberOfLeadingZeros(n) | (1 << (RESIZE_STAMP_BITS - 1));
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity <= 1)
+            return 1;
+        if (capacity >= MAXIMUM_CAPACITY)
+            return MAXIMUM_CAPACITY;
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private static <K, V> Node<K, V> tabAt(Node<K, V>[] tab, int index) {
+        return (Node<K, V>) TABLE_ELEMENT.getAcquire(tab, index);
+    }
+
+    private static <K, V> boolean casTabAt(Node<K, V>[] tab, int index, Node<K, V> expected, Node<K, V> node) {
+        return TABLE_ELEMENT.compareAndSet(tab, index, expected, node);
+    }
+
+    private static <K, V> void setTabAt(Node<K, V>[] tab, int index, Node<K, V> node) {
+        TABLE_ELEMENT.setRelease(tab, index, node);
+    }
+
+    /**
+     * Узел корзины. value и next volatile: читатель без блокировки видит узел целиком
+     */
+    static class Node<K, V> implements Map.Entry<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * Запись идёт через {@link MapEntry}, сам узел меняется только под блокировкой корзины
+         */
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> that)) return false;
+            return key.equals(that.getKey()) && value.equals(that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+
+        /**
+         * Поиск в цепочке, начиная с этого узла
+         */
+        Node<K, V> find(int hash, Object key) {
+            for (var node = this; node != null; node = node.next) {
+                if (node.hash == hash && (node.key == key || (node.key != null && key.equals(node.key))))
+                    return node;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Стоит на месте перенесённой корзины и ведёт в новую таблицу
+     */
+    static final class ForwardingNode<K, V> extends Node<K, V> {
+        final Node<K, V>[] nextTable;
+
+        ForwardingNode(Node<K, V>[] nextTable) {
+            super(MOVED, null, null, null);
+            this.nextTable = nextTable;
+        }
+
+        @Override
+        Node<K, V> find(int hash, Object key) {
+            var tab = nextTable;
+            while (true) {
+                var node = tabAt(tab, (tab.length - 1) & hash);
+                if (node == null)
+                    return null;
+                if (node instanceof ForwardingNode<K, V> forwarding) {
+                    tab = forwarding.nextTable;
+                } else {
+                    return node.hash < 0 ? null : node.find(hash, key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Занимает пустую корзину, пока computeIfAbsent вычисляет значение
+     */
+    static final class ReservationNode<K, V> extends Node<K, V> {
+        ReservationNode() {
+            super(RESERVED, null, null, null);
+        }
+
+        @Override
+        Node<K, V> find(int hash, Object key) {
+            return null;
+        }
+    }
+
+    /**
+     * Обход таблицы, переживающий resize: встретив {@link ForwardingNode}, обходчик уходит в новую таблицу
+     * за корзинами i и i + n, а потом возвращается. Пройденные таблицы хранятся в стеке
+     */
+    static class Traverser<K, V> {
+        private Node<K, V>[] tab;
+        private Node<K, V> next;
+        private TableStack<K, V> stack;
+        private TableStack<K, V> spare;
+        private int index;
+        private int baseIndex;
+        private final int baseLimit;
+        private final int baseSize;
+
+        /**
+         * @param tab
+         * @param size  длина исходной таблицы
+         * @param index первая корзина
+         * @param limit граница обхода (не включая)
+         */
+        Traverser(Node<K, V>[] tab, int size, int index, int limit) {
+            this.tab = tab;
+            this.baseSize = size;
+            this.baseIndex = this.index = index;
+            this.baseLimit = limit;
+        }
+
+        /**
+         * @return следующий узел или null, если обход закончен
+         */
+        final Node<K, V> advance() {
+            var node = next;
+            if (node != null)
+                node = node.next;
+            while (true) {
+                Node<K, V>[] t;
+                int i, n;
+                if (node != null)
+                    return next = node;
+                if (baseIndex >= baseLimit || (t = tab) == null || (n = t.length) <= (i = index) || i < 0)
+                    return next = null;
+                if ((node = tabAt(t, i)) != null && node.hash < 0) {
+                    if (node instanceof ForwardingNode<K, V> forwarding) {
+                        tab = forwarding.nextTable;
+                        node = null;
+                        pushState(t, i, n);
+                        continue;
+                    }
+                    node = null;
+                }
+                if (stack != null)
+                    recoverState(n);
+                else if ((index = i + baseSize) >= n)
+                    index = ++baseIndex;
+            }
+        }
+
+        private void pushState(Node<K, V>[] t, int i, int n) {
+            var state = spare;
+            if (state != null)
+                spare = state.next;
+            else
+                state = new TableStack<>();
+            state.tab = t;
+            state.length = n;
+            state.index = i;
+            state.next = stack;
+            stack = state;
+        }
+
+        private void recoverState(int n) {
+            TableStack<K, V> state;
+            int length;
+            while ((state = stack) != null && (index += (length = state.length)) >= n) {
+                n = length;
+                index = state.index;
+                tab = state.tab;
+                state.tab = null;
+                var nextState = state.next;
+                state.next = spare;
+                stack = nextState;
+                spare = state;
+            }
+            if (state == null && (index += baseSize) >= n)
+                index = ++baseIndex;
+        }
+    }
+
+    static final class TableStack<K, V> {
+        int length;
+        int index;
+        Node<K, V>[] tab;
+        TableStack<K, V> next;
+    }
+
+    private Traverser<K, V> traverser() {
+        var tab = table;
+        int n = tab == null ? 0 : tab.length;
+        return new Traverser<>(tab, n, 0, n);
+    }
+
+    private abstract class BaseIterator<T> implements Iterator<T> {
+        private final Traverser<K, V> traverser = traverser();
+        private Node<K, V> next = traverser.advance();
+        private Node<K, V> lastReturned;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        Node<K, V> nextNode() {
+            var node = next;
+            if (node == null)
+                throw new NoSuchElementException();
+            lastReturned = node;
+            next = traverser.advance();
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            replaceNode(lastReturned.key, null, null);
+            lastReturned = null;
+        }
+    }
+
+    private final class KeyIterator extends BaseIterator<K> {
+        @Override
+        public K next() {
+            return nextNode().key;
+        }
+    }
+
+    private final class ValueIterator extends BaseIterator<V> {
+        @Override
+        public V next() {
+            return nextNode().value;
+        }
+    }
+
+    private final class EntryIterator extends BaseIterator<Map.Entry<K, V>> {
+        @Override
+        public Map.Entry<K, V> next() {
+            var node = nextNode();
+            return new MapEntry(node.key, node.value);
+        }
+    }
+
+    /**
+     * Снимок пары ключ-значение, setValue пишет в таблицу через put
+     */
+    private final class MapEntry implements Map.Entry<K, V> {
+        private final K key;
+        private V value;
+
+        MapEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            Objects.requireNonNull(value);
+            var oldValue = this.value;
+            this.value = value;
+            put(key, value);
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> that)) return false;
+            return key.equals(that.getKey()) && value.equals(that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        @Override
+        public int size() {
+            return ConcurrentMyHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentMyHashMap.this.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return ConcurrentMyHashMap.this.remove(o) != null;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public int size() {
+            return ConcurrentMyHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentMyHashMap.this.clear();
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return ConcurrentMyHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentMyHashMap.this.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> entry) || entry.getKey() == null)
+                return false;
+            var value = get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof Map.Entry<?, ?> entry && entry.getKey() != null && entry.getValue() != null
+                    && ConcurrentMyHashMap.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package org.example.map;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * {@link MyHashMap}, в котором пары истекают через заданное время после записи или после последнего обращения.
+ * Срок хранится в узле ({@link LinkedNode#time}), узлы разложены по иерархическому колесу таймеров:
+ * <ul>
+ *     <li>5 уровней по 64, 64, 32, 4 и 1 корзине, корзина уровня покрывает ~1 с, ~1 мин, ~1 ч, ~1.6 сут и ~6.5 сут</li>
+ *     <li>узел попадает на самый мелкий уровень, в который помещается оставшееся время, постановка и снятие - O(1)</li>
+ *     <li>каждая операция сначала продвигает колесо до текущего времени: обрабатываются только корзины,
+ *     время которых прошло. Истёкшие узлы удаляются, остальные переезжают на более мелкий уровень - узел
+ *     переезжает не больше раза на уровень (с последнего - раз в ~6.5 сут), полного обхода таблицы нет</li>
+ * </ul>
+ * get/containsKey/remove сами проверяют срок найденного узла, истёкшая пара для них не существует.
+ * size, containsValue, представления и массовые операции могут ещё видеть пары, истёкшие в пределах последней корзины (~1 с).
+ * Время берётся из ticker (нс), по умолчанию System::nanoTime. clone возвращает обычный MyHashMap,
+ * сериализация не поддерживается
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public class ExpiringHashMap<K, V> extends MyHashMap<K, V> {
+
+    public enum ExpiryPolicy {
+        /**
+         * Срок отсчитывается от последней записи
+         */
+        AFTER_WRITE,
+        /**
+         * Срок отсчитывается от последней записи или чтения
+         */
+        AFTER_ACCESS
+    }
+
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    /**
+     * SPANS[i] - время одной корзины уровня i, степени двойки около 1 с, 1 мин, 1 ч, 1.6 сут и 6.5 сут.
+     * Последний элемент - время, которое покрывает весь последний уровень
+     */
+    private static final long[] SPANS = {1L << 30, 1L << 36, 1L << 42, 1L << 47, 1L << 49, 1L << 49};
+    private static final int[] SHIFT = {30, 36, 42, 47, 49};
+    /**
+     * Больший срок считается бесконечным (~146 лет), чтобы now + ttl не переполнялось
+     */
+    private static final long MAXIMUM_TTL = Long.MAX_VALUE >>> 1;
+    private static final long NO_WRITE = -1;
+
+    private final long timeToLive;
+    private final ExpiryPolicy policy;
+    private final LongSupplier ticker;
+    /**
+     * Показание ticker при создании: время в колесе отсчитывается от него и не бывает отрицательным
+     */
+    private final long origin;
+    /**
+     * wheel[уровень][корзина] - заглушка кольцевого списка узлов по before/after
+     */
+    private final LinkedNode<K, V>[][] wheel;
+    /**
+     * Время, до которого колесо уже продвинуто
+     */
+    private long nanos;
+    /**
+     * Срок для узла, который сейчас записывает put. NO_WRITE - идёт чтение
+     */
+    private long writeTimeToLive = NO_WRITE;
+
+    /**
+     * @param expireAfterWrite - срок хранения пары после записи
+     */
+    public ExpiringHashMap(Duration expireAfterWrite) {
+        this(expireAfterWrite, ExpiryPolicy.AFTER_WRITE, System::nanoTime);
+    }
+
+    /**
+     * @param timeToLive - срок по умолчанию, см. {@link #put(Object, Object, Duration)}
+     * @param ticker     - текущее время в нс, монотонное
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiringHashMap(Duration timeToLive, ExpiryPolicy policy, LongSupplier ticker) {
+        this.timeToLive = toNanos(timeToLive);
+        this.policy = Objects.requireNonNull(policy);
+        this.ticker = Objects.requireNonNull(ticker);
+        this.origin = ticker.getAsLong();
+        this.wheel = new LinkedNode[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new LinkedNode[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                wheel[i][j] = sentinel();
+            }
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return putValue(key, value, timeToLive);
+    }
+
+    /**
+     * put со своим сроком для этой записи. При {@link ExpiryPolicy#AFTER_ACCESS} чтение продлевает пару
+     * на срок по умолчанию
+     *
+     * @return тоже самое что и {@link #put(Object, Object)}
+     */
+    public V put(K key, V value, Duration timeToLive) {
+        return putValue(key, value, toNanos(timeToLive));
+    }
+
+    @Override
+    public V get(Object key) {
+        var node = getLiveEntry(key);
+        if (node == null)
+            throw new NoSuchElementException();
+        afterNodeAccess(node);
+        return node.value;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        var node = getLiveEntry(key);
+        if (node == null)
+            return defaultValue;
+        afterNodeAccess(node);
+        return node.value;
+    }
+
+    /**
+     * По одному ключу через put: каждая пара получает срок по умолчанию
+     */
+    @Override
+    public void putAll(K[] keys, V[] values) {
+        if (values.length < keys.length)
+            throw new IllegalArgumentException();
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * По одному ключу: срок каждой пары проверяется точно, как в get
+     */
+    @Override
+    public int getAll(K[] keys, V[] out) {
+        if (out.length < keys.length)
+            throw new IllegalArgumentException();
+        int found = 0;
+        for (int i = 0; i < keys.length; i++) {
+            var node = getLiveEntry(keys[i]);
+            out[i] = null;
+            if (node != null) {
+                afterNodeAccess(node);
+                out[i] = node.value;
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /*
+     * Остальные операции записи: истёкшая пара сначала удаляется, новая или изменённая получает срок по умолчанию.
+     * Найденное значение без записи (putIfAbsent, computeIfAbsent) считается чтением
+     */
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        var node = getLiveEntry(key);
+        if (node != null && node.value != null) {
+            afterNodeAccess(node);
+            return node.value;
+        }
+        return write(timeToLive, () -> super.putIfAbsent(key, value));
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        var node = getLiveEntry(key);
+        if (node != null && node.value != null) {
+            afterNodeAccess(node);
+            return node.value;
+        }
+        return write(timeToLive, () -> super.computeIfAbsent(key, mappingFunction));
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        getLiveEntry(key);
+        return write(timeToLive, () -> super.computeIfPresent(key, remappingFunction));
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        getLiveEntry(key);
+        return write(timeToLive, () -> super.compute(key, remappingFunction));
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        getLiveEntry(key);
+        return write(timeToLive, () -> super.merge(key, value, remappingFunction));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getLiveEntry(key) != null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (getLiveEntry(key) == null)
+            throw new NoSuchElementException();
+        return super.remove(key);
+    }
+
+    @Override
+    public int size() {
+        cleanUp();
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        cleanUp();
+        return super.isEmpty();
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        cleanUp();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        cleanUp();
+        return super.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        cleanUp();
+        return super.values();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        cleanUp();
+        return super.entrySet();
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        cleanUp();
+        return super.cursor();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        cleanUp();
+        super.forEach(action);
+    }
+
+    @Override
+    public void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        cleanUp();
+        super.forEach(parallelismThreshold, action);
+    }
+
+    @Override
+    public <U> U search(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        cleanUp();
+        return super.search(parallelismThreshold, searchFunction);
+    }
+
+    @Override
+    public <U> U reduce(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> transformer,
+                        BiFunction<? super U, ? super U, ? extends U> reducer) {
+        cleanUp();
+        return super.reduce(parallelismThreshold, transformer, reducer);
+    }
+
+    @Override
+    public V reduceValues(long parallelismThreshold, BiFunction<? super V, ? super V, ? extends V> reducer) {
+        cleanUp();
+        return super.reduceValues(parallelismThreshold, reducer);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        for (LinkedNode<K, V>[] level : wheel) {
+            for (LinkedNode<K, V> sentinel : level) {
+                sentinel.before = sentinel.after = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Продвигает колесо до текущего времени и удаляет истёкшие пары. Вызывается каждой операцией,
+     * отдельно нужен, только если карта долго не используется
+     */
+    public void cleanUp() {
+        long previousTime = nanos;
+        long currentTime = ticker.getAsLong() - origin;
+        if (currentTime <= previousTime)
+            return;
+        nanos = currentTime;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTime >>> SHIFT[i];
+            long currentTicks = currentTime >>> SHIFT[i];
+            if (currentTicks == previousTicks)
+                break;
+            expire(i, previousTicks, currentTicks - previousTicks);
+        }
+    }
+
+    /**
+     * @return оставшееся время жизни пары
+     */
+    public Duration getTimeToLive(Object key) {
+        var node = getLiveEntry(key);
+        if (node == null)
+            throw new NoSuchElementException();
+        return Duration.ofNanos(node.time - nanos);
+    }
+
+    public ExpiryPolicy getPolicy() {
+        return policy;
+    }
+
+    private V putValue(K key, V value, long timeToLive) {
+        // истёкшая пара удаляется заранее, иначе put вернул бы её значение
+        getLiveEntry(key);
+        return write(timeToLive, () -> super.put(key, value));
+    }
+
+    /**
+     * Выполняет запись со сроком timeToLive. Предыдущий срок восстанавливается: функция compute-метода
+     * может сама писать в карту
+     */
+    private <R> R write(long timeToLive, Supplier<R> operation) {
+        long previous = writeTimeToLive;
+        writeTimeToLive = timeToLive;
+        try {
+            return operation.get();
+        } finally {
+            writeTimeToLive = previous;
+        }
+    }
+
+    /**
+     * @return живой узел по ключу или null. Истёкший узел удаляется
+     */
+    private LinkedNode<K, V> getLiveEntry(Object key) {
+        cleanUp();
+        var node = (LinkedNode<K, V>) getEntry(key);
+        if (node != null && node.time - nanos <= 0) {
+            super.remove(key);
+            return null;
+        }
+        return node;
+    }
+
+    @Override
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> next) {
+        var node = new LinkedNode<>(hash, key, value, next);
+        schedule(node, writeTimeToLive);
+        return node;
+    }
+
+    @Override
+    BinaryTreeNode<K, V> newTreeNode(int hash, K key, V value, Node<K, V> next) {
+        var node = super.newTreeNode(hash, key, value, next);
+        schedule(node, writeTimeToLive);
+        return node;
+    }
+
+    @Override
+    Node<K, V> replacementNode(Node<K, V> node, Node<K, V> next) {
+        var replacement = new LinkedNode<>(node.hash, node.key, node.value, next);
+        transferLinks((LinkedNode<K, V>) node, replacement);
+        return replacement;
+    }
+
+    @Override
+    BinaryTreeNode<K, V> replacementTreeNode(Node<K, V> node, Node<K, V> next) {
+        var replacement = super.replacementTreeNode(node, next);
+        transferLinks((LinkedNode<K, V>) node, replacement);
+        return replacement;
+    }
+
+    /**
+     * Запись ставит новый срок всегда, чтение - только при {@link ExpiryPolicy#AFTER_ACCESS}
+     */
+    @Override
+    void afterNodeAccess(Node<K, V> node) {
+        var linked = (LinkedNode<K, V>) node;
+        if (writeTimeToLive != NO_WRITE) {
+            unlink(linked);
+            schedule(linked, writeTimeToLive);
+        } else if (policy == ExpiryPolicy.AFTER_ACCESS) {
+            unlink(linked);
+            schedule(linked, timeToLive);
+        }
+    }
+
+    /**
+     * setValue у пары обхода - тоже запись, иначе срок AFTER_WRITE от неё не сдвигался бы
+     */
+    @Override
+    boolean tracksEntryWrites() {
+        return true;
+    }
+
+    @Override
+    V setEntryValue(Node<K, V> node, V value) {
+        return write(timeToLive, () -> super.setEntryValue(node, value));
+    }
+
+    @Override
+    void afterNodeRemoval(Node<K, V> node) {
+        unlink((LinkedNode<K, V>) node);
+    }
+
+    private void schedule(LinkedNode<K, V> node, long timeToLive) {
+        node.time = nanos + timeToLive;
+        link(findBucket(node.time), node);
+    }
+
+    /**
+     * @return заглушка корзины: самый мелкий уровень, целиком покрывающий оставшееся время
+     */
+    private LinkedNode<K, V> findBucket(long time) {
+        long duration = time - nanos;
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    /**
+     * Обрабатывает корзины уровня от previousTicks до currentTicks включительно. Корзина сначала переносится
+     * в отдельный список: узлы, которые ещё не истекли, могут вернуться в неё же
+     */
+    private void expire(int level, long previousTicks, long delta) {
+        var timerWheel = wheel[level];
+        int mask = timerWheel.length - 1;
+        int steps = (int) Math.min(delta + 1, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        LinkedNode<K, V> pending = sentinel();
+        for (int i = start; i < start + steps; i++) {
+            var sentinel = timerWheel[i & mask];
+            if (sentinel.after == sentinel)
+                continue;
+            pending.after = sentinel.after;
+            pending.before = sentinel.before;
+            pending.after.before = pending;
+            pending.before.after = pending;
+            sentinel.before = sentinel.after = sentinel;
+            // всегда берётся первый узел: удаление из таблицы может заменить соседние узлы в pending
+            for (var node = pending.after; node != pending; node = pending.after) {
+                unlink(node);
+                if (node.time - nanos <= 0) {
+                    super.remove(node.key);
+                } else {
+                    link(findBucket(node.time), node);
+                }
+            }
+        }
+    }
+
+    private void transferLinks(LinkedNode<K, V> from, LinkedNode<K, V> to) {
+        to.time = from.time;
+        if (from.before == null)
+            return;
+        to.before = from.before;
+        to.after = from.after;
+        to.before.after = to;
+        to.after.before = to;
+        from.before = from.after = null;
+    }
+
+    private static <K, V> void link(LinkedNode<K, V> sentinel, LinkedNode<K, V> node) {
+        node.before = sentinel.before;
+        node.after = sentinel;
+        sentinel.before.after = node;
+        sentinel.before = node;
+    }
+
+    private static <K, V> void unlink(LinkedNode<K, V> node) {
+        if (node.before == null)
+            return;
+        node.before.after = node.after;
+        node.after.before = node.before;
+        node.before = node.after = null;
+    }
+
+    private static <K, V> LinkedNode<K, V> sentinel() {
+        var sentinel = new LinkedNode<K, V>(0, null, null, null);
+        sentinel.before = sentinel.after = sentinel;
+        return sentinel;
+    }
+
+    private static long toNanos(Duration duration) {
+        if (duration.isNegative())
+            throw new IllegalArgumentException("Negative duration: " + duration);
+        try {
+            return Math.min(duration.toNanos(), MAXIMUM_TTL);
+        } catch (ArithmeticException e) {
+            return MAXIMUM_TTL;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException(getClass().getName());
+    }
+}
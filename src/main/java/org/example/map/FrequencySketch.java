@@ -0,0 +1,107 @@
+package org.example.map;
+
+/**
+ * Приблизительная частота обращений к ключам для {@link BoundedCache}: Count-Min Sketch с 4-битными счётчиками.
+ * Один long хранит 16 счётчиков, для ключа берутся 4 счётчика в 4 разных long'ах, частота - минимум из них.
+ * Когда число увеличений доходит до sampleSize (10 * ожидаемый размер), все счётчики делятся пополам -
+ * старая популярность постепенно забывается
+ *
+ * @author Dasdassand
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] table = new long[8];
+    private int tableMask = 7;
+    private int sampleSize = 80;
+    private int size;
+
+    /**
+     * Увеличивает таблицу под maximumSize ключей. Накопленные частоты при этом теряются
+     *
+     * @param maximumSize
+     */
+    void ensureCapacity(long maximumSize) {
+        int capacity = (int) Math.min(maximumSize, MAXIMUM_CAPACITY);
+        if (table.length >= capacity)
+            return;
+        table = new long[Integer.highestOneBit(capacity - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+        size = 0;
+    }
+
+    /**
+     * @param hash - hash ключа
+     * @return оценка частоты, от 0 до 15
+     */
+    int frequency(int hash) {
+        int item = spread(hash);
+        int start = (item & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(item, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        int item = spread(hash);
+        int start = (item & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(item, i), start + i);
+        }
+        if (added && ++size == sampleSize)
+            reset();
+    }
+
+    /**
+     * @param index   - long в таблице
+     * @param counter - номер 4-битного счётчика в нём
+     * @return false - счётчик уже на максимуме
+     */
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Делит все счётчики пополам. Нечётные счётчики теряют половинку - size уменьшается с поправкой на это
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    /**
+     * Дополнительное перемешивание: hash таблицы подобран под индекс корзины, а не под 4 независимых индекса
+     */
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,424 @@
+package org.example.map;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Неизменяемая карта на минимальном совершенном хешировании (CHD, compress-hash-displace).
+ * Ключи и значения лежат в двух плоских массивах длины m, где m - число различных hashCode,
+ * и каждому hashCode при построении назначена своя ячейка. Поиск - два перемешивания hash, смещение
+ * корзины из {@link #displacements} и одно сравнение ключа, без цепочек и проб.
+ * <p>
+ * Построение: hashCode раскладываются по корзинам примерно по {@link #BUCKET_SIZE} штук, корзины
+ * от больших к меньшим получают смещения (d0, d1), при которых все их ячейки (f1 + d0 * f2 + d1) mod m свободны.
+ * Корзины из одного hashCode занимают любую свободную ячейку напрямую через d1. Если корзину не удалось
+ * разместить - построение повторяется с другим seed.
+ * <p>
+ * Ключи с одинаковым hashCode никакая функция от hashCode не разведёт, поэтому такие группы делят одну ячейку
+ * и в ней просматриваются по очереди. Память: две ссылки на пару и 2 int на корзину против узла
+ * с четырьмя полями на пару и таблицы в {@link MyHashMap}.
+ * <p>
+ * Контракт чтения тот же, что у {@link MyHashMap}: get отсутствующего ключа - NoSuchElementException,
+ * containsValue сравнивает значения по ссылке. Все изменения - UnsupportedOperationException
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public final class FrozenHashMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * Среднее число hashCode в корзине CHD. Больше - меньше памяти на смещения, но дольше построение
+     */
+    private static final int BUCKET_SIZE = 4;
+    /**
+     * Сколько d0 перебирается для одной корзины, прежде чем построение начнётся заново с другим seed
+     */
+    private static final int MAX_DISPLACEMENT = 1 << 10;
+    private static final Object ABSENT = new Object();
+
+    private transient int size;
+    private transient long seed;
+    /**
+     * Пары (d0, d1) корзин подряд: [2 * bucket] и [2 * bucket + 1]
+     */
+    private transient int[] displacements;
+    /**
+     * Ключ ячейки или {@link Collisions}, если hashCode общий у нескольких ключей
+     */
+    private transient Object[] keys;
+    private transient Object[] values;
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    private FrozenHashMap(Object[] keys, Object[] values, int size) {
+        build(keys, values, size);
+    }
+
+    /**
+     * @param source не должен меняться во время копирования
+     * @return неизменяемая копия source
+     */
+    public static <K, V> FrozenHashMap<K, V> copyOf(Map<? extends K, ? extends V> source) {
+        if (source instanceof FrozenHashMap)
+            return (FrozenHashMap<K, V>) source;
+        var keys = new Object[source.size()];
+        var values = new Object[keys.length];
+        int count = 0;
+        for (Map.Entry<? extends K, ? extends V> entry : source.entrySet()) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2 + 1);
+                values = Arrays.copyOf(values, keys.length);
+            }
+            keys[count] = entry.getKey();
+            values[count++] = entry.getValue();
+        }
+        return new FrozenHashMap<>(keys, values, count);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return lookup(key) != ABSENT;
+    }
+
+    /**
+     * @param value value whose presence in this map is to be tested
+     * @return true - если значение (именно этот объект) содержится в карте
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] instanceof Collisions collisions) {
+                for (Object candidate : collisions.values) {
+                    if (candidate == value)
+                        return true;
+                }
+            } else if (values[slot] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value по указанному ключу или NoSuchElementException
+     */
+    @Override
+    public V get(Object key) {
+        var value = lookup(key);
+        if (value == ABSENT)
+            throw new NoSuchElementException();
+        return (V) value;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        var value = lookup(key);
+        return value == ABSENT ? defaultValue : (V) value;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    /**
+     * @return значение по ключу или {@link #ABSENT}
+     */
+    private Object lookup(Object key) {
+        if (keys.length == 0)
+            return ABSENT;
+        int slot = slotOf(Objects.hashCode(key));
+        var candidate = keys[slot];
+        if (candidate instanceof Collisions collisions) {
+            for (int i = 0; i < collisions.keys.length; i++) {
+                if (Objects.equals(collisions.keys[i], key))
+                    return collisions.values[i];
+            }
+            return ABSENT;
+        }
+        return Objects.equals(candidate, key) ? values[slot] : ABSENT;
+    }
+
+    private int slotOf(int hash) {
+        long first = mix64(hash ^ seed);
+        long second = mix64(first);
+        int m = keys.length;
+        int bucket = reduce(first >>> 32, displacements.length >> 1);
+        long f1 = reduce(first & 0xFFFFFFFFL, m);
+        long f2 = reduce(second >>> 32, m);
+        return (int) ((f1 + displacements[bucket << 1] * f2 + displacements[(bucket << 1) + 1]) % m);
+    }
+
+    /**
+     * Группирует пары по hashCode и подбирает seed, при котором все корзины CHD размещаются
+     *
+     * @param sourceKeys   ключи без повторов
+     * @param sourceValues значения с теми же индексами
+     * @param count        сколько пар занято в массивах
+     */
+    private void build(Object[] sourceKeys, Object[] sourceValues, int count) {
+        // hashCode в старших 32 битах, индекс пары - в младших: после сортировки группы идут подряд
+        var order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (long) Objects.hashCode(sourceKeys[i]) << 32 | i;
+        }
+        Arrays.sort(order);
+        int distinct = 0;
+        var hashes = new int[count];
+        var groupKeys = new Object[count];
+        var groupValues = new Object[count];
+        for (int start = 0, end; start < count; start = end) {
+            int hash = (int) (order[start] >> 32);
+            end = start + 1;
+            while (end < count && (int) (order[end] >> 32) == hash) {
+                end++;
+            }
+            if (end - start == 1) {
+                groupKeys[distinct] = sourceKeys[(int) order[start]];
+                groupValues[distinct] = sourceValues[(int) order[start]];
+            } else {
+                var collisions = new Collisions(end - start);
+                for (int i = start; i < end; i++) {
+                    collisions.keys[i - start] = sourceKeys[(int) order[i]];
+                    collisions.values[i - start] = sourceValues[(int) order[i]];
+                }
+                groupKeys[distinct] = collisions;
+            }
+            hashes[distinct++] = hash;
+        }
+        size = count;
+        keys = new Object[distinct];
+        values = new Object[distinct];
+        displacements = new int[2 * Math.max(1, (distinct + BUCKET_SIZE - 1) / BUCKET_SIZE)];
+        if (distinct == 0)
+            return;
+        var slots = new int[distinct];
+        for (long attempt = 1; !place(hashes, distinct, slots, attempt * 0x9E3779B97F4A7C15L); attempt++) {
+            Arrays.fill(displacements, 0);
+        }
+        for (int group = 0; group < distinct; group++) {
+            keys[slots[group]] = groupKeys[group];
+            values[slots[group]] = groupValues[group];
+        }
+    }
+
+    /**
+     * Один проход CHD с заданным seed
+     *
+     * @param slots сюда пишется ячейка каждой группы
+     * @return false - какую-то корзину не удалось разместить
+     */
+    private boolean place(int[] hashes, int m, int[] slots, long seed) {
+        int bucketCount = displacements.length >> 1;
+        var bucketOf = new int[m];
+        var f1 = new long[m];
+        var f2 = new long[m];
+        var bucketStart = new int[bucketCount + 1];
+        int maxBucketSize = 0;
+        for (int group = 0; group < m; group++) {
+            long first = mix64(hashes[group] ^ seed);
+            long second = mix64(first);
+            bucketOf[group] = reduce(first >>> 32, bucketCount);
+            f1[group] = reduce(first & 0xFFFFFFFFL, m);
+            f2[group] = reduce(second >>> 32, m);
+            maxBucketSize = Math.max(maxBucketSize, ++bucketStart[bucketOf[group] + 1]);
+        }
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            bucketStart[bucket + 1] += bucketStart[bucket];
+        }
+        var members = new int[m];
+        var filled = bucketStart.clone();
+        for (int group = 0; group < m; group++) {
+            members[filled[bucketOf[group]]++] = group;
+        }
+        var taken = new boolean[m];
+        var positions = new long[maxBucketSize];
+        int free = 0;
+        for (int bucketSize = maxBucketSize; bucketSize > 0; bucketSize--) {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                int start = bucketStart[bucket];
+                if (bucketStart[bucket + 1] - start != bucketSize)
+                    continue;
+                if (bucketSize == 1) {
+                    while (taken[free]) {
+                        free++;
+                    }
+                    int group = members[start];
+                    displacements[(bucket << 1) + 1] = (int) ((free - f1[group] + m) % m);
+                    taken[free] = true;
+                    slots[group] = free;
+                } else if (!displace(bucket, members, start, bucketSize, f1, f2, positions, taken, slots, m)) {
+                    return false;
+                }
+            }
+        }
+        this.seed = seed;
+        return true;
+    }
+
+    /**
+     * Перебор d0 и для каждого - сдвиг d1, при котором все ячейки корзины свободны
+     */
+    private boolean displace(int bucket, int[] members, int start, int bucketSize, long[] f1, long[] f2,
+                             long[] positions, boolean[] taken, int[] slots, int m) {
+        for (int d0 = 0, d0Limit = Math.min(m, MAX_DISPLACEMENT); d0 < d0Limit; d0++) {
+            for (int i = 0; i < bucketSize; i++) {
+                int group = members[start + i];
+                positions[i] = (f1[group] + d0 * f2[group]) % m;
+            }
+            if (!distinct(positions, bucketSize))
+                continue;
+            search:
+            for (int d1 = 0; d1 < m; d1++) {
+                for (int i = 0; i < bucketSize; i++) {
+                    if (taken[(int) ((positions[i] + d1) % m)])
+                        continue search;
+                }
+                for (int i = 0; i < bucketSize; i++) {
+                    int slot = (int) ((positions[i] + d1) % m);
+                    taken[slot] = true;
+                    slots[members[start + i]] = slot;
+                }
+                displacements[bucket << 1] = d0;
+                displacements[(bucket << 1) + 1] = d1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean distinct(long[] positions, int count) {
+        for (int i = 1; i < count; i++) {
+            for (int j = 0; j < i; j++) {
+                if (positions[i] == positions[j])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Отображение 32 случайных бит в [0, n) умножением вместо деления
+     *
+     * @param bits значение в [0, 2^32)
+     */
+    private static int reduce(long bits, int n) {
+        return (int) ((bits * n) >>> 32);
+    }
+
+    /**
+     * Финализатор mix64 из SplittableRandom
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Пишутся только пары: hashCode, а с ним и ячейки, в другой JVM могут быть другими (enum, Object.hashCode)
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (var entry : entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        if (count < 0)
+            throw new InvalidObjectException("Illegal FrozenHashMap size");
+        var keys = new Object[count];
+        var values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = in.readObject();
+            values[i] = in.readObject();
+        }
+        build(keys, values, count);
+    }
+
+    /**
+     * Пары с общим hashCode, делят одну ячейку
+     */
+    private static final class Collisions {
+        private final Object[] keys;
+        private final Object[] values;
+
+        private Collisions(int length) {
+            keys = new Object[length];
+            values = new Object[length];
+        }
+    }
+
+    /**
+     * Обход ячеек по порядку, группы с общим hashCode раскрываются на месте
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private int slot;
+        private int inGroup;
+
+        @Override
+        public boolean hasNext() {
+            return slot < keys.length;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (slot >= keys.length)
+                throw new NoSuchElementException();
+            if (keys[slot] instanceof Collisions collisions) {
+                var entry = new SimpleImmutableEntry<>((K) collisions.keys[inGroup], (V) collisions.values[inGroup]);
+                if (++inGroup == collisions.keys.length) {
+                    inGroup = 0;
+                    slot++;
+                }
+                return entry;
+            }
+            var entry = new SimpleImmutableEntry<>((K) keys[slot], (V) values[slot]);
+            slot++;
+            return entry;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> entry))
+                return false;
+            var value = lookup(entry.getKey());
+            return value != ABSENT && Objects.equals(value, entry.getValue());
+        }
+    }
+}
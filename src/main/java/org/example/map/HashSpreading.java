@@ -0,0 +1,59 @@
+package org.example.map;
+
+/**
+ * Перемешивание hashCode перед взятием индекса корзины.
+ * Индекс - это младшие биты hash (hash &amp; (length - 1)), поэтому ключи, которые отличаются только
+ * старшими битами (i &lt;&lt; 16, Float.hashCode, результаты Objects.hash с большим множителем), без перемешивания
+ * падают в одну корзину
+ *
+ * @author Dasdassand
+ */
+public enum HashSpreading {
+    /**
+     * hashCode как есть
+     */
+    NONE {
+        @Override
+        public int spread(int hash) {
+            return hash;
+        }
+    },
+    /**
+     * Старшие 16 бит подмешиваются к младшим одним xor - как в java.util.HashMap.
+     * Дёшево и достаточно, когда hashCode сам по себе неплохой
+     */
+    XOR_FOLD {
+        @Override
+        public int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    },
+    /**
+     * Финализатор murmur3 (fmix32): каждый бит входа влияет на все биты результата.
+     * Дороже XOR_FOLD, но выравнивает и плохие hashCode
+     */
+    MURMUR3 {
+        @Override
+        public int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            hash ^= hash >>> 16;
+            return hash;
+        }
+    },
+    /**
+     * Защита от подбора коллизий: {@link MyHashMap} заводит себе случайный секретный ключ и хеширует
+     * сам ключ карты, а не его hashCode, см. {@link KeyedHash}. Дороже остальных режимов для String
+     * (проход по всей строке на каждый поиск). Без ключа карты, то есть вне MyHashMap, работает как MURMUR3
+     */
+    KEYED {
+        @Override
+        public int spread(int hash) {
+            return MURMUR3.spread(hash);
+        }
+    };
+
+    public abstract int spread(int hash);
+}
@@ -0,0 +1,104 @@
+package org.example.map;
+
+import java.security.SecureRandom;
+import java.util.Objects;
+
+/**
+ * Hash с секретным ключом для {@link HashSpreading#KEYED}. Ключ свой у каждой карты, поэтому набор строк,
+ * собранный в одну корзину для одной карты, в другой раскладывается случайно.
+ * String хешируется SipHash-1-3 по содержимому - его hashCode подбирается на коллизии за секунды.
+ * Integer и Long перемешиваются одним проходом mix64 с ключом: hashCode у них - само значение,
+ * и подобрать значения в одну корзину без ключа нельзя. Остальные ключи перемешивают свой hashCode с ключом:
+ * равные hashCode по-прежнему попадают в одну корзину, от этого защищает только дерево в корзине
+ *
+ * @author Dasdassand
+ */
+final class KeyedHash {
+    private static final SecureRandom SEEDS = new SecureRandom();
+    private static final int COMPRESSION_ROUNDS = 1;
+    private static final int FINALIZATION_ROUNDS = 3;
+
+    private final long k0;
+    private final long k1;
+
+    KeyedHash() {
+        this(SEEDS.nextLong(), SEEDS.nextLong());
+    }
+
+    KeyedHash(long k0, long k1) {
+        this.k0 = k0;
+        this.k1 = k1;
+    }
+
+    int hash(Object key) {
+        if (key instanceof String string)
+            return (int) sipHash(string);
+        if (key instanceof Integer integer)
+            return (int) mix64(integer + k0);
+        if (key instanceof Long value)
+            return (int) mix64(value + k1);
+        return (int) mix64(Objects.hashCode(key) ^ k0);
+    }
+
+    /**
+     * SipHash-1-3 по UTF-16 коду строки: четыре char на слово, младший char в младших битах.
+     * Длина в байтах - в старшем байте последнего слова, как в оригинале
+     */
+    long sipHash(String string) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        int length = string.length();
+        int end = length & ~3;
+        for (int i = 0; i <= end; i += 4) {
+            long word;
+            if (i < end) {
+                word = string.charAt(i) | (long) string.charAt(i + 1) << 16
+                        | (long) string.charAt(i + 2) << 32 | (long) string.charAt(i + 3) << 48;
+            } else {
+                word = (long) (length << 1) << 56;
+                for (int j = i; j < length; j++) {
+                    word |= (long) string.charAt(j) << ((j - i) << 4);
+                }
+            }
+            v3 ^= word;
+            for (int round = 0; round < COMPRESSION_ROUNDS; round++) {
+                v0 += v1;
+                v1 = Long.rotateLeft(v1, 13) ^ v0;
+                v0 = Long.rotateLeft(v0, 32);
+                v2 += v3;
+                v3 = Long.rotateLeft(v3, 16) ^ v2;
+                v0 += v3;
+                v3 = Long.rotateLeft(v3, 21) ^ v0;
+                v2 += v1;
+                v1 = Long.rotateLeft(v1, 17) ^ v2;
+                v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= word;
+        }
+        v2 ^= 0xff;
+        for (int round = 0; round < FINALIZATION_ROUNDS; round++) {
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13) ^ v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16) ^ v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21) ^ v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17) ^ v2;
+            v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    /**
+     * Финализатор mix64 из SplittableRandom
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,357 @@
+package org.example.map;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Таблица с ключами long без упаковки: ключи лежат в long[], значения - в Object[] под теми же индексами.
+ * Открытая адресация с линейным пробированием. Ключ 0 - признак пустой ячейки, поэтому сам ключ 0 хранится отдельно.
+ * <p>
+ * Методы с long-ключом (get(long), put(long, V), ...) не создают объектов и не вызывают equals.
+ * Методы Map с Long оставлены как адаптер: таблицу можно отдать туда, где ждут Map&lt;Long, V&gt;,
+ * а вызовы вида put(random.nextLong(), value) без изменений попадают в long-перегрузку.
+ * В отличие от {@link MyHashMap}, get отсутствующего ключа возвращает null
+ *
+ * @param <V>
+ * @author Dasdassand
+ */
+public class LongObjectHashMap<V> extends AbstractMap<Long, V> implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private Object[] values;
+    /**
+     * Кол-во ключей в массиве, без ключа 0
+     */
+    private int assigned;
+    private boolean hasZeroKey;
+    private V zeroValue;
+    private final float loadFactor;
+    private int resizeAt;
+
+    private transient Set<Map.Entry<Long, V>> entrySet;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        this(expectedSize, 0.75f);
+    }
+
+    public LongObjectHashMap(int expectedSize, float loadFactor) {
+        if (expectedSize < 0 || loadFactor <= 0 || loadFactor >= 1)
+            throw new IllegalArgumentException();
+        this.loadFactor = loadFactor;
+        allocate(capacityFor(expectedSize, loadFactor));
+    }
+
+    /**
+     * @param key
+     * @return значение или null
+     */
+    public V get(long key) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : null;
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : defaultValue;
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : (V) values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : slotOf(key) >= 0;
+    }
+
+    /**
+     * @return старое значение или null
+     */
+    public V put(long key, V value) {
+        if (key == 0) {
+            var oldValue = zeroValue;
+            zeroValue = value;
+            hasZeroKey = true;
+            return oldValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                var oldValue = (V) values[slot];
+                values[slot] = value;
+                return oldValue;
+            }
+            if (existing == 0) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++assigned >= resizeAt)
+                    rehash(keys.length * 2);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return удалённое значение или null
+     */
+    public V remove(long key) {
+        if (key == 0) {
+            var oldValue = zeroValue;
+            zeroValue = null;
+            hasZeroKey = false;
+            return oldValue;
+        }
+        int slot = slotOf(key);
+        if (slot < 0)
+            return null;
+        var oldValue = (V) values[slot];
+        shiftConflictingKeys(slot);
+        assigned--;
+        return oldValue;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Long boxed ? get(boxed.longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long boxed && containsKey(boxed.longValue());
+    }
+
+    @Override
+    public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Long boxed ? remove(boxed.longValue()) : null;
+    }
+
+    @Override
+    public int size() {
+        return assigned + (hasZeroKey ? 1 : 0);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        assigned = 0;
+        hasZeroKey = false;
+        zeroValue = null;
+    }
+
+    /**
+     * Удаление через итератор не поддерживается: сдвиг ключей при удалении перемешал бы порядок обхода
+     */
+    @Override
+    public Set<Map.Entry<Long, V>> entrySet() {
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    @Override
+    public LongObjectHashMap<V> clone() {
+        try {
+            var clone = (LongObjectHashMap<V>) super.clone();
+            clone.keys = keys.clone();
+            clone.values = values.clone();
+            clone.entrySet = null;
+            return clone;
+        } catch (CloneNotSupportedException exception) {
+            throw new AssertionError(exception);
+        }
+    }
+
+    /**
+     * @return индекс ячейки с ключом или -1
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key)
+                return slot;
+            if (existing == 0)
+                return -1;
+        }
+    }
+
+    /**
+     * Удаление без "надгробий": ключи, которые стоят дальше по цепочке проб, сдвигаются в освободившуюся ячейку
+     *
+     * @param gap - освобождённая ячейка
+     */
+    private void shiftConflictingKeys(int gap) {
+        int mask = keys.length - 1;
+        int distance = 0;
+        while (true) {
+            int slot = (gap + (++distance)) & mask;
+            long existing = keys[slot];
+            if (existing == 0)
+                break;
+            int shift = (slot - mix(existing)) & mask;
+            if (shift >= distance) {
+                keys[gap] = existing;
+                values[gap] = values[slot];
+                gap = slot;
+                distance = 0;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        var oldKeys = keys;
+        var oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        resizeAt = Math.min(capacity - 1, (int) Math.ceil(capacity * loadFactor));
+    }
+
+    /**
+     * @return степень двойки, в которую expectedSize помещается с запасом по loadFactor,
+     * или IllegalArgumentException, если не помещается и в {@link #MAXIMUM_CAPACITY}
+     */
+    private static int capacityFor(int expectedSize, float loadFactor) {
+        int capacity = 4;
+        while (capacity * loadFactor <= expectedSize) {
+            if (capacity == MAXIMUM_CAPACITY)
+                throw new IllegalArgumentException("Expected size is too large: " + expectedSize);
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Финализатор murmur3 для 64 бит: последовательные ключи не должны ложиться в соседние ячейки одной цепочкой
+     */
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<Long, V>> {
+        @Override
+        public int size() {
+            return LongObjectHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            LongObjectHashMap.this.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> entry) || !(entry.getKey() instanceof Long key))
+                return false;
+            return containsKey(key.longValue()) && Objects.equals(get(key.longValue()), entry.getValue());
+        }
+
+        @Override
+        public Iterator<Map.Entry<Long, V>> iterator() {
+            return new Iterator<>() {
+                /**
+                 * -1 - ключ 0, дальше - ячейки массива
+                 */
+                private int slot = hasZeroKey ? -1 : nextSlot(-1);
+
+                @Override
+                public boolean hasNext() {
+                    return slot < keys.length;
+                }
+
+                @Override
+                public Map.Entry<Long, V> next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    long key = slot < 0 ? 0 : keys[slot];
+                    slot = nextSlot(slot);
+                    return new Entry(key);
+                }
+
+                private int nextSlot(int from) {
+                    int next = from + 1;
+                    while (next < keys.length && keys[next] == 0) {
+                        next++;
+                    }
+                    return next;
+                }
+            };
+        }
+    }
+
+    private final class Entry implements Map.Entry<Long, V> {
+        private final long key;
+
+        Entry(long key) {
+            this.key = key;
+        }
+
+        @Override
+        public Long getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return get(key);
+        }
+
+        @Override
+        public V setValue(V value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Map.Entry<?, ?> that)) return false;
+            return Objects.equals(key, that.getKey()) && Objects.equals(getValue(), that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
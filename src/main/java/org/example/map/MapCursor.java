@@ -0,0 +1,45 @@
+package org.example.map;
+
+/**
+ * Обход карты без объекта на каждый шаг: курсор стоит на паре, ключ и значение читаются из неё напрямую.
+ * Один курсор можно пройти заново через {@link #reset()}.
+ * <pre>
+ * var cursor = map.cursor();
+ * while (cursor.advance()) {
+ *     use(cursor.key(), cursor.value());
+ * }
+ * </pre>
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public interface MapCursor<K, V> {
+
+    /**
+     * @return false - пары кончились, курсор больше ни на чём не стоит
+     */
+    boolean advance();
+
+    /**
+     * @return ключ текущей пары или IllegalStateException, если курсор не стоит на паре
+     */
+    K key();
+
+    V value();
+
+    /**
+     * @return прежнее значение текущей пары
+     */
+    V setValue(V value);
+
+    /**
+     * Удаляет текущую пару, следующий {@link #advance()} перейдёт к паре после неё
+     */
+    void remove();
+
+    /**
+     * Возвращает курсор к началу карты в её нынешнем состоянии
+     */
+    void reset();
+}
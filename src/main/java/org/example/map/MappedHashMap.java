@@ -0,0 +1,554 @@
+package org.example.map;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Таблица, которая живёт в файле, отображённом в память через {@link FileChannel#map}.
+ * Открытие существующего файла читает только заголовок, остальное подгружается ОС постранично при обращении.
+ * <p>
+ * Формат файла:
+ * <ul>
+ *     <li>заголовок {@link #HEADER_SIZE} байт: magic, версия, смещение индекса, размер, конец данных,
+ *     размер окна</li>
+ *     <li>индекс корзин: long число корзин, затем по long на корзину - смещение первой записи (0 - корзина пустая)</li>
+ *     <li>область записей, только дописывается: long next, int hash, int длина ключа, int длина значения,
+ *     байты ключа и значения, выравнивание до 8 байт</li>
+ * </ul>
+ * Корзина - цепочка записей, как лист в {@link MyHashMap}. Замена значения дописывает новую запись и вставляет
+ * её в цепочку вместо старой, удаление только выкидывает запись из цепочки. Когда элементов становится больше
+ * 3/4 числа корзин, в конец файла дописываются новый индекс вдвое больше и копии всех живых записей, уже
+ * сцепленные по новым корзинам. Старые индекс и цепочки при этом не меняются, а новый индекс вступает в силу
+ * одной записью его смещения в заголовок. Если процесс упадёт во время роста, файл откроется со старым индексом
+ * и без потерь; от сбоя самой ОС защищает только {@link #force()}.
+ * Место старых записей и индексов не переиспользуется.
+ * <p>
+ * Файл отображается окнами по windowSize байт (один MappedByteBuffer не бывает больше 2 ГБ), запись
+ * никогда не пересекает границу окна. Ключи сравниваются и хешируются по байтам из {@link Codec}.
+ * get отсутствующего ключа возвращает null. Таблица не потокобезопасна
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public class MappedHashMap<K, V> extends AbstractMap<K, V> implements Closeable {
+
+    private static final long MAGIC = 0x4D7948617368_4D61L;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int VERSION_OFFSET = 8;
+    private static final int INDEX_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int END_OFFSET = 32;
+    private static final int WINDOW_SIZE_OFFSET = 40;
+    /**
+     * Заголовок записи: long next, int hash, int длина ключа, int длина значения
+     */
+    private static final int RECORD_HEADER = 20;
+    private static final int DEFAULT_WINDOW_SIZE = 16 << 20;
+    private static final int DEFAULT_BUCKET_COUNT = 16;
+    private static final int MAXIMUM_BUCKET_COUNT = 1 << 30;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    /**
+     * У существующего файла берётся из заголовка: записи выровнены по окнам, с которыми файл создавался
+     */
+    private int windowSize;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> windows = new ArrayList<>();
+
+    /**
+     * Копии полей заголовка и числа корзин из индекса, в файл пишутся сразу при изменении
+     */
+    private int bucketCount;
+    private long indexOffset;
+    private long size;
+    private long end;
+
+    private ByteBuffer scratch = ByteBuffer.allocate(64);
+    private boolean closed;
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    public MappedHashMap(Path file, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(file, keyCodec, valueCodec, DEFAULT_BUCKET_COUNT, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Открывает файл, а если его нет или он пустой - создаёт новую таблицу
+     *
+     * @param expectedSize число элементов, под которое создаётся индекс нового файла. У существующего файла не важно
+     * @param windowSize   размер окна отображения нового файла, степень двойки. Файл растёт окнами,
+     *                     запись больше окна не поместится
+     */
+    public MappedHashMap(Path file, Codec<K> keyCodec, Codec<V> valueCodec, int expectedSize, int windowSize)
+            throws IOException {
+        if (expectedSize < 0 || windowSize < HEADER_SIZE || Integer.bitCount(windowSize) != 1)
+            throw new IllegalArgumentException();
+        this.keyCodec = Objects.requireNonNull(keyCodec);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                create(bucketCountFor(expectedSize));
+            } else {
+                open();
+            }
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    @Override
+    public int size() {
+        checkOpen();
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @param key
+     * @return значение или null
+     */
+    @Override
+    public V get(Object key) {
+        checkOpen();
+        int keyLength = encodeKey(key);
+        int hash = OffHeapHashMap.hashBytes(scratch, keyLength);
+        for (long record = getLong(bucketOffset(hash)); record != 0; record = getLong(record)) {
+            if (keyEquals(record, hash, keyLength))
+                return readValue(record);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        checkOpen();
+        int keyLength = encodeKey(key);
+        int hash = OffHeapHashMap.hashBytes(scratch, keyLength);
+        for (long record = getLong(bucketOffset(hash)); record != 0; record = getLong(record)) {
+            if (keyEquals(record, hash, keyLength))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return старое значение или null
+     */
+    @Override
+    public V put(K key, V value) {
+        checkOpen();
+        Objects.requireNonNull(value);
+        int keyLength = encodeKey(key);
+        int hash = OffHeapHashMap.hashBytes(scratch, keyLength);
+        long link = bucketOffset(hash);
+        for (long record; (record = getLong(link)) != 0; link = record) {
+            if (keyEquals(record, hash, keyLength)) {
+                var oldValue = readValue(record);
+                long replacement = appendRecord(hash, keyLength, value, getLong(record));
+                putLong(link, replacement);
+                return oldValue;
+            }
+        }
+        putLong(link, appendRecord(hash, keyLength, value, 0));
+        setSize(size + 1);
+        if (size > bucketCount * LOAD_FACTOR && bucketCount < MAXIMUM_BUCKET_COUNT)
+            rehash(bucketCount * 2);
+        return null;
+    }
+
+    /**
+     * @return удалённое значение или null
+     */
+    @Override
+    public V remove(Object key) {
+        checkOpen();
+        int keyLength = encodeKey(key);
+        int hash = OffHeapHashMap.hashBytes(scratch, keyLength);
+        long link = bucketOffset(hash);
+        for (long record; (record = getLong(link)) != 0; link = record) {
+            if (keyEquals(record, hash, keyLength)) {
+                var oldValue = readValue(record);
+                putLong(link, getLong(record));
+                setSize(size - 1);
+                return oldValue;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Обнуляет индекс. Файл не уменьшается, место записей не переиспользуется
+     */
+    @Override
+    public void clear() {
+        checkOpen();
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            putLong(bucketAt(indexOffset, bucket), 0);
+        }
+        setSize(0);
+    }
+
+    /**
+     * Сбрасывает изменённые страницы на диск
+     */
+    public void force() {
+        checkOpen();
+        for (MappedByteBuffer window : windows) {
+            if (window != null)
+                window.force();
+        }
+    }
+
+    /**
+     * Сбрасывает изменения на диск и закрывает файл. Окна отображения освобождает GC
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        force();
+        closed = true;
+        windows.clear();
+        scratch = null;
+        channel.close();
+    }
+
+    /**
+     * @return длина файла в байтах
+     */
+    public long getFileSize() throws IOException {
+        checkOpen();
+        return channel.size();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        checkOpen();
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Map is closed");
+    }
+
+    private void create(int bucketCount) {
+        var header = window(0);
+        header.putLong(0, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(WINDOW_SIZE_OFFSET, windowSize);
+        end = HEADER_SIZE;
+        setIndex(allocateIndex(bucketCount));
+        setSize(0);
+    }
+
+    private void open() throws IOException {
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.read(header, 0) != HEADER_SIZE || header.getLong(0) != MAGIC)
+            throw new IOException("Not a MappedHashMap file");
+        if (header.getInt(VERSION_OFFSET) != VERSION)
+            throw new IOException("Unsupported MappedHashMap version " + header.getInt(VERSION_OFFSET));
+        windowSize = header.getInt(WINDOW_SIZE_OFFSET);
+        if (windowSize < HEADER_SIZE || Integer.bitCount(windowSize) != 1 || channel.size() % windowSize != 0)
+            throw new IOException("Corrupted MappedHashMap header");
+        indexOffset = header.getLong(INDEX_OFFSET);
+        size = header.getLong(SIZE_OFFSET);
+        end = header.getLong(END_OFFSET);
+        if (indexOffset < HEADER_SIZE || indexOffset % Long.BYTES != 0 || indexOffset >= end || end > channel.size())
+            throw new IOException("Corrupted MappedHashMap header");
+        long count = getLong(indexOffset);
+        if (count <= 0 || count > MAXIMUM_BUCKET_COUNT || Long.bitCount(count) != 1
+                || indexOffset + (count + 1) * Long.BYTES > end)
+            throw new IOException("Corrupted MappedHashMap index");
+        bucketCount = (int) count;
+    }
+
+    /**
+     * Публикация индекса: одна запись long в заголовок. Число корзин лежит в самом индексе,
+     * поэтому заголовок никогда не указывает на индекс с чужим числом корзин
+     */
+    private void setIndex(long indexOffset) {
+        window(0).putLong(INDEX_OFFSET, indexOffset);
+        this.indexOffset = indexOffset;
+        this.bucketCount = (int) getLong(indexOffset);
+    }
+
+    private void setSize(long size) {
+        this.size = size;
+        window(0).putLong(SIZE_OFFSET, size);
+    }
+
+    private void setEnd(long end) {
+        this.end = end;
+        window(0).putLong(END_OFFSET, end);
+    }
+
+    /**
+     * Окно, в котором лежит position. Отображается при первом обращении, файл при этом растёт до конца окна
+     */
+    private MappedByteBuffer window(long position) {
+        int number = (int) (position / windowSize);
+        while (windows.size() <= number) {
+            windows.add(null);
+        }
+        var window = windows.get(number);
+        if (window == null) {
+            try {
+                window = channel.map(FileChannel.MapMode.READ_WRITE, (long) number * windowSize, windowSize);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            windows.set(number, window);
+        }
+        return window;
+    }
+
+    private int offsetInWindow(long position) {
+        return (int) (position & (windowSize - 1));
+    }
+
+    private long getLong(long position) {
+        return window(position).getLong(offsetInWindow(position));
+    }
+
+    private void putLong(long position, long value) {
+        window(position).putLong(offsetInWindow(position), value);
+    }
+
+    private long bucketOffset(int hash) {
+        return bucketAt(indexOffset, hash & (bucketCount - 1));
+    }
+
+    /**
+     * @return смещение ячейки корзины в индексе, который начинается с index
+     */
+    private static long bucketAt(long index, int bucket) {
+        return index + (long) (bucket + 1) * Long.BYTES;
+    }
+
+    /**
+     * Пустой индекс дописывается в конец файла, первым long - число корзин. Индекс может пересекать окна,
+     * отдельная ячейка - нет: всё выровнено по 8 байт
+     *
+     * @return смещение индекса
+     */
+    private long allocateIndex(int bucketCount) {
+        long index = end;
+        setEnd(index + (bucketCount + 1L) * Long.BYTES);
+        window(end - 1);
+        putLong(index, bucketCount);
+        return index;
+    }
+
+    /**
+     * Место под запись в конце файла. Если запись не помещается в остаток окна, она начинается со следующего
+     *
+     * @return смещение записи
+     */
+    private long allocateRecord(int recordSize) {
+        if (recordSize > windowSize)
+            throw new IllegalArgumentException("Record of " + recordSize + " bytes does not fit a window");
+        long position = end;
+        if (offsetInWindow(position) + recordSize > windowSize)
+            position = (position / windowSize + 1) * windowSize;
+        setEnd(position + align(recordSize));
+        return position;
+    }
+
+    private long appendRecord(int hash, int keyLength, V value, long next) {
+        int valueLength = valueCodec.sizeOf(value);
+        long record = allocateRecord(RECORD_HEADER + keyLength + valueLength);
+        var window = window(record);
+        int offset = offsetInWindow(record);
+        window.putLong(offset, next);
+        window.putInt(offset + 8, hash);
+        window.putInt(offset + 12, keyLength);
+        window.putInt(offset + 16, valueLength);
+        window.put(offset + RECORD_HEADER, scratch, 0, keyLength);
+        window.position(offset + RECORD_HEADER + keyLength);
+        valueCodec.write(window, value);
+        if (window.position() != offset + RECORD_HEADER + keyLength + valueLength)
+            throw new IllegalStateException("Codec wrote a different number of bytes than sizeOf returned");
+        return record;
+    }
+
+    /**
+     * Новый индекс вдвое больше дописывается в конец файла, в его цепочки попадают копии записей.
+     * Записи старых цепочек не трогаются: до {@link #setIndex(long)} файл целиком описывается старым индексом
+     */
+    private void rehash(int newBucketCount) {
+        long oldIndex = indexOffset;
+        int oldBucketCount = bucketCount;
+        long newIndex = allocateIndex(newBucketCount);
+        int mask = newBucketCount - 1;
+        for (int bucket = 0; bucket < oldBucketCount; bucket++) {
+            for (long record = getLong(bucketAt(oldIndex, bucket)); record != 0; record = getLong(record)) {
+                int hash = window(record).getInt(offsetInWindow(record) + 8);
+                long link = bucketAt(newIndex, hash & mask);
+                putLong(link, copyRecord(record, getLong(link)));
+            }
+        }
+        setIndex(newIndex);
+    }
+
+    /**
+     * @return смещение копии record в конце файла, с другим next
+     */
+    private long copyRecord(long record, long next) {
+        var source = window(record);
+        int sourceOffset = offsetInWindow(record);
+        int length = RECORD_HEADER + source.getInt(sourceOffset + 12) + source.getInt(sourceOffset + 16);
+        long copy = allocateRecord(length);
+        var target = window(copy);
+        int targetOffset = offsetInWindow(copy);
+        target.put(targetOffset, source, sourceOffset, length);
+        target.putLong(targetOffset, next);
+        return copy;
+    }
+
+    private int encodeKey(Object key) {
+        Objects.requireNonNull(key);
+        var typedKey = (K) key;
+        int length = keyCodec.sizeOf(typedKey);
+        if (scratch.capacity() < length)
+            scratch = ByteBuffer.allocate(Math.max(length, scratch.capacity() * 2));
+        scratch.clear();
+        keyCodec.write(scratch, typedKey);
+        if (scratch.position() != length)
+            throw new IllegalStateException("Codec wrote " + scratch.position() + " bytes instead of " + length);
+        return length;
+    }
+
+    private boolean keyEquals(long record, int hash, int keyLength) {
+        var window = window(record);
+        int offset = offsetInWindow(record);
+        if (window.getInt(offset + 8) != hash || window.getInt(offset + 12) != keyLength)
+            return false;
+        offset += RECORD_HEADER;
+        int i = 0;
+        for (; i + Long.BYTES <= keyLength; i += Long.BYTES) {
+            if (window.getLong(offset + i) != scratch.getLong(i))
+                return false;
+        }
+        for (; i < keyLength; i++) {
+            if (window.get(offset + i) != scratch.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    private K readKey(long record) {
+        var window = window(record);
+        int offset = offsetInWindow(record);
+        window.position(offset + RECORD_HEADER);
+        return keyCodec.read(window, window.getInt(offset + 12));
+    }
+
+    private V readValue(long record) {
+        var window = window(record);
+        int offset = offsetInWindow(record);
+        window.position(offset + RECORD_HEADER + window.getInt(offset + 12));
+        return valueCodec.read(window, window.getInt(offset + 16));
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static int bucketCountFor(int expectedSize) {
+        int bucketCount = DEFAULT_BUCKET_COUNT;
+        while (bucketCount * LOAD_FACTOR < expectedSize && bucketCount < MAXIMUM_BUCKET_COUNT) {
+            bucketCount <<= 1;
+        }
+        return bucketCount;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return MappedHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            MappedHashMap.this.clear();
+        }
+
+        /**
+         * Обход по корзинам индекса. Удаление через итератор выкидывает запись из цепочки,
+         * её поле next остаётся прежним, поэтому обход продолжается с того же места
+         */
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            checkOpen();
+            return new Iterator<>() {
+                private int bucket = -1;
+                private long next = advance(0);
+                private K lastKey;
+
+                @Override
+                public boolean hasNext() {
+                    return next != 0;
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    long record = next;
+                    next = advance(getLong(record));
+                    lastKey = readKey(record);
+                    return new Entry(lastKey, readValue(record));
+                }
+
+                @Override
+                public void remove() {
+                    if (lastKey == null)
+                        throw new IllegalStateException();
+                    MappedHashMap.this.remove(lastKey);
+                    lastKey = null;
+                }
+
+                private long advance(long record) {
+                    while (record == 0 && ++bucket < bucketCount) {
+                        record = getLong(bucketAt(indexOffset, bucket));
+                    }
+                    return record;
+                }
+            };
+        }
+    }
+
+    private final class Entry extends AbstractMap.SimpleEntry<K, V> {
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.map;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * События JFR для {@link MyHashMap}. Пока запись JFR не включена, событие стоит одну проверку shouldCommit,
+ * поэтому они пишутся всегда, независимо от {@link MyHashMap#setStatisticsEnabled(boolean)}
+ *
+ * @author Dasdassand
+ */
+final class MyHashMapEvents {
+
+    private MyHashMapEvents() {
+    }
+
+    @Name("org.example.map.MyHashMapResize")
+    @Label("MyHashMap Resize")
+    @Category({"MyCollections", "MyHashMap"})
+    @Description("Рост таблицы. В инкрементальном режиме длительность не включает перенос корзин на следующих записях")
+    static final class ResizeEvent extends Event {
+        @Label("Old Capacity")
+        int oldCapacity;
+
+        @Label("New Capacity")
+        int newCapacity;
+
+        @Label("Size")
+        int size;
+
+        @Label("Incremental")
+        boolean incremental;
+    }
+
+    @Name("org.example.map.MyHashMapBucketTransition")
+    @Label("MyHashMap Bucket Transition")
+    @Category({"MyCollections", "MyHashMap"})
+    @Description("Корзина стала деревом или снова листом")
+    @StackTrace(false)
+    static final class BucketTransitionEvent extends Event {
+        @Label("Bucket Index")
+        int index;
+
+        @Label("Bucket Length")
+        int length;
+
+        @Label("To Tree")
+        boolean treeify;
+    }
+
+    /**
+     * Срез {@link MyHashMap.Statistics}, который пишется по вызову {@link MyHashMap#getStatistics()}
+     */
+    @Name("org.example.map.MyHashMapStatistics")
+    @Label("MyHashMap Statistics")
+    @Category({"MyCollections", "MyHashMap"})
+    @StackTrace(false)
+    static final class StatisticsEvent extends Event {
+        @Label("Size")
+        int size;
+
+        @Label("Capacity")
+        int capacity;
+
+        @Label("Resize Count")
+        long resizeCount;
+
+        @Label("Resize Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long resizeNanos;
+
+        @Label("Treeify Count")
+        long treeifyCount;
+
+        @Label("Untreeify Count")
+        long untreeifyCount;
+
+        @Label("Lookup Count")
+        long lookupCount;
+
+        @Label("Average Probe Length")
+        double averageProbeLength;
+
+        @Label("Max Bucket Length")
+        int maxBucketLength;
+    }
+}
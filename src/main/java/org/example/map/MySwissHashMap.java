@@ -0,0 +1,737 @@
+package org.example.map;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Открытая адресация в стиле Swiss table: вместо цепочек {@link MyHashMap.Node} - три плоских массива
+ * (управляющие байты, ключи, значения). Управляющие байты упакованы по 8 в long (группа), и вся группа
+ * проверяется за несколько операций над long (SWAR), без перебора ячеек по одной.
+ * <p>
+ * Управляющий байт ячейки: {@link #EMPTY}, {@link #DELETED} или младшие 7 бит hash ключа (H2).
+ * Старшие биты hash (H1) выбирают группу, с которой начинается проба. Пробы идут по группам
+ * с треугольным шагом, поиск останавливается на группе, где есть хотя бы одна пустая ячейка.
+ * <p>
+ * Контракт тот же, что у {@link MyHashMap}: get/remove отсутствующего ключа - NoSuchElementException,
+ * containsValue сравнивает значения по ссылке
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public class MySwissHashMap<K, V> implements Map<K, V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int GROUP_WIDTH = 8;
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final byte EMPTY = (byte) 0x80;
+    private static final byte DELETED = (byte) 0xFE;
+    private static final long EMPTY_GROUP = 0x8080808080808080L;
+    private static final long LSB = 0x0101010101010101L;
+    private static final long MSB = 0x8080808080808080L;
+
+    /**
+     * Таблица не сериализуется: раскладка зависит от hashCode, который у ключей без своего hashCode
+     * (enum, Object) в другой JVM другой. В поток пишутся пары, см. {@link #writeObject(ObjectOutputStream)}
+     */
+    private transient long[] control;
+    private transient Object[] keyData;
+    private transient Object[] valueData;
+    private transient int size;
+    private transient int deleted;
+    /**
+     * Сколько ещё пустых ячеек можно занять до rehash. Таблица заполняется не больше чем на 7/8,
+     * поэтому в любой последовательности проб всегда найдётся группа с пустой ячейкой
+     */
+    private transient int growthLeft;
+    /**
+     * Число структурных изменений: вставка, удаление, rehash. compute-методы по нему видят, что функция
+     * сама изменила карту и найденная ячейка больше ничего не значит
+     */
+    private transient int modCount;
+
+    private transient Set<K> keySet;
+    private transient Collection<V> values;
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    public MySwissHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize - сколько элементов поместится без rehash
+     */
+    public MySwissHashMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException();
+        init(capacityFor(expectedSize));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @param value value whose presence in this map is to be tested
+     * @return true - если значение (именно этот объект) содержится в таблице
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        for (int group = 0; group < control.length; group++) {
+            for (long full = matchFull(control[group]); full != 0; full &= full - 1) {
+                if (valueData[slotOf(group, full)] == value)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value по указанному ключу или NoSuchElementException
+     */
+    @Override
+    public V get(Object key) {
+        int slot = find(key);
+        if (slot < 0)
+            throw new NoSuchElementException();
+        return (V) valueData[slot];
+    }
+
+    /**
+     * @return в случае замены - старое значение, иначе - null
+     */
+    @Override
+    public V put(K key, V value) {
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            var oldValue = (V) valueData[slot];
+            valueData[slot] = value;
+            return oldValue;
+        }
+        insert(hash, key, value);
+        return null;
+    }
+
+    /**
+     * @param key key whose mapping is to be removed from the map
+     * @return value удалённого элемента или NoSuchElementException
+     */
+    @Override
+    public V remove(Object key) {
+        int slot = find(key);
+        if (slot < 0)
+            throw new NoSuchElementException();
+        var oldValue = (V) valueData[slot];
+        erase(slot);
+        return oldValue;
+    }
+
+    /**
+     * В отличие от get не бросает исключение: для отсутствующего ключа - defaultValue
+     */
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        int slot = find(key);
+        return slot < 0 ? defaultValue : (V) valueData[slot];
+    }
+
+    /*
+     * compute-методы находят ячейку одной пробой и меняют значение прямо в ней, новый ключ вставляется
+     * без повторного поиска. Как и в Map, null-значение равносильно отсутствию пары. Если функция сама
+     * изменила карту - ConcurrentModificationException
+     */
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot < 0) {
+            insert(hash, key, value);
+            return null;
+        }
+        var oldValue = (V) valueData[slot];
+        if (oldValue == null)
+            valueData[slot] = value;
+        return oldValue;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot >= 0 && valueData[slot] != null)
+            return (V) valueData[slot];
+        int expectedModCount = modCount;
+        V value = mappingFunction.apply(key);
+        checkModCount(expectedModCount);
+        if (value == null)
+            return null;
+        if (slot < 0) {
+            insert(hash, key, value);
+        } else {
+            valueData[slot] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        int slot = find(key);
+        if (slot < 0 || valueData[slot] == null)
+            return null;
+        int expectedModCount = modCount;
+        V value = remappingFunction.apply(key, (V) valueData[slot]);
+        checkModCount(expectedModCount);
+        return replaceOrErase(slot, value);
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        int hash = hash(key);
+        int slot = find(key, hash);
+        int expectedModCount = modCount;
+        V value = remappingFunction.apply(key, slot < 0 ? null : (V) valueData[slot]);
+        checkModCount(expectedModCount);
+        if (slot >= 0)
+            return replaceOrErase(slot, value);
+        if (value != null)
+            insert(hash, key, value);
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot < 0) {
+            insert(hash, key, value);
+            return value;
+        }
+        var oldValue = (V) valueData[slot];
+        if (oldValue == null) {
+            valueData[slot] = value;
+            return value;
+        }
+        int expectedModCount = modCount;
+        V merged = remappingFunction.apply(oldValue, value);
+        checkModCount(expectedModCount);
+        return replaceOrErase(slot, merged);
+    }
+
+    /**
+     * Новое значение для найденной ячейки: null - пара удаляется
+     */
+    private V replaceOrErase(int slot, V value) {
+        if (value == null) {
+            erase(slot);
+        } else {
+            valueData[slot] = value;
+        }
+        return value;
+    }
+
+    private void checkModCount(int expectedModCount) {
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if (m.size() > growthLeft)
+            rehash(capacityFor(size + m.size()));
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        init(capacityFor(DEFAULT_INITIAL_CAPACITY));
+    }
+
+    @Override
+    public Set<K> keySet() {
+        if (keySet == null)
+            keySet = new KeySet();
+        return keySet;
+    }
+
+    @Override
+    public Collection<V> values() {
+        if (values == null)
+            values = new Values();
+        return values;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    @Override
+    public MySwissHashMap<K, V> clone() {
+        try {
+            var clone = (MySwissHashMap<K, V>) super.clone();
+            clone.control = control.clone();
+            clone.keyData = keyData.clone();
+            clone.valueData = valueData.clone();
+            clone.keySet = null;
+            clone.values = null;
+            clone.entrySet = null;
+            return clone;
+        } catch (CloneNotSupportedException exception) {
+            throw new AssertionError(exception);
+        }
+    }
+
+    /**
+     * @return кол-во ячеек таблицы
+     */
+    public int getCapacity() {
+        return keyData.length;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int group = 0; group < control.length; group++) {
+            for (long full = matchFull(control[group]); full != 0; full &= full - 1) {
+                int slot = slotOf(group, full);
+                out.writeObject(keyData[slot]);
+                out.writeObject(valueData[slot]);
+            }
+        }
+    }
+
+    /**
+     * Таблица создаётся сразу нужного размера, пары раскладываются по hashCode этой JVM без проверки повторов
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        if (count < 0 || count > maxFill(MAXIMUM_CAPACITY))
+            throw new InvalidObjectException("Illegal MySwissHashMap size: " + count);
+        init(capacityFor(Math.max(count, DEFAULT_INITIAL_CAPACITY)));
+        for (int i = 0; i < count; i++) {
+            var key = (K) in.readObject();
+            var value = (V) in.readObject();
+            insert(hash(key), key, value);
+        }
+    }
+
+    private void init(int capacity) {
+        control = new long[capacity / GROUP_WIDTH];
+        Arrays.fill(control, EMPTY_GROUP);
+        keyData = new Object[capacity];
+        valueData = new Object[capacity];
+        size = 0;
+        deleted = 0;
+        growthLeft = maxFill(capacity);
+        modCount++;
+    }
+
+    private int find(Object key) {
+        return find(key, hash(key));
+    }
+
+    /**
+     * @param key
+     * @param hash
+     * @return индекс ячейки с ключом или -1
+     */
+    private int find(Object key, int hash) {
+        byte h2 = h2(hash);
+        int mask = control.length - 1;
+        int group = h1(hash) & mask;
+        for (int step = 1; ; step++) {
+            long word = control[group];
+            for (long match = matchByte(word, h2); match != 0; match &= match - 1) {
+                int slot = slotOf(group, match);
+                if (controlAt(slot) == h2 && Objects.equals(keyData[slot], key))
+                    return slot;
+            }
+            if (matchEmpty(word) != 0)
+                return -1;
+            group = (group + step) & mask;
+        }
+    }
+
+    /**
+     * Вставка ключа, которого точно нет в таблице
+     */
+    private void insert(int hash, K key, V value) {
+        int slot = findFreeSlot(hash);
+        if (growthLeft == 0 && controlAt(slot) == EMPTY) {
+            rehash(size + 1 > maxFill(keyData.length) / 2 ? keyData.length * 2 : keyData.length);
+            slot = findFreeSlot(hash);
+        }
+        if (controlAt(slot) == EMPTY) {
+            growthLeft--;
+        } else {
+            deleted--;
+        }
+        setControl(slot, h2(hash));
+        keyData[slot] = key;
+        valueData[slot] = value;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * @return первая ячейка EMPTY или DELETED на последовательности проб
+     */
+    private int findFreeSlot(int hash) {
+        int mask = control.length - 1;
+        int group = h1(hash) & mask;
+        for (int step = 1; ; step++) {
+            long free = matchEmptyOrDeleted(control[group]);
+            if (free != 0)
+                return slotOf(group, free);
+            group = (group + step) & mask;
+        }
+    }
+
+    /**
+     * Если в группе уже есть пустая ячейка, ни одна проба через эту группу не проходила,
+     * и освобождённую ячейку можно сразу пометить как EMPTY. Иначе остаётся DELETED
+     */
+    private void erase(int slot) {
+        int group = slot / GROUP_WIDTH;
+        if (matchEmpty(control[group]) != 0) {
+            setControl(slot, EMPTY);
+            growthLeft++;
+        } else {
+            setControl(slot, DELETED);
+            deleted++;
+        }
+        keyData[slot] = null;
+        valueData[slot] = null;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Перестраивает таблицу с новым кол-вом ячеек. Заодно пропадают все DELETED
+     */
+    private void rehash(int newCapacity) {
+        var oldControl = control;
+        var oldKeys = keyData;
+        var oldValues = valueData;
+        init(newCapacity);
+        int count = 0;
+        for (int group = 0; group < oldControl.length; group++) {
+            for (long full = matchFull(oldControl[group]); full != 0; full &= full - 1) {
+                int oldSlot = slotOf(group, full);
+                int hash = hash(oldKeys[oldSlot]);
+                int slot = findFreeSlot(hash);
+                setControl(slot, h2(hash));
+                keyData[slot] = oldKeys[oldSlot];
+                valueData[slot] = oldValues[oldSlot];
+                count++;
+            }
+        }
+        size = count;
+        growthLeft -= count;
+    }
+
+    private byte controlAt(int slot) {
+        return (byte) (control[slot / GROUP_WIDTH] >>> ((slot % GROUP_WIDTH) << 3));
+    }
+
+    private void setControl(int slot, byte value) {
+        int shift = (slot % GROUP_WIDTH) << 3;
+        int group = slot / GROUP_WIDTH;
+        control[group] = (control[group] & ~(0xFFL << shift)) | ((value & 0xFFL) << shift);
+    }
+
+    /**
+     * Перемешивание hash (финализатор murmur3): H1 и H2 берутся из разных бит и должны быть независимы
+     */
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int h1(int hash) {
+        return hash >>> 7;
+    }
+
+    private static byte h2(int hash) {
+        return (byte) (hash & 0x7F);
+    }
+
+    /**
+     * Байты группы, равные h2 - старший бит соответствующего байта результата.
+     * Возможны ложные срабатывания (байт 0x01 над совпавшим), поэтому совпадение перепроверяется
+     */
+    private static long matchByte(long word, byte h2) {
+        long x = word ^ (LSB * h2);
+        return (x - LSB) & ~x & MSB;
+    }
+
+    /**
+     * EMPTY - единственный управляющий байт со старшим битом 1 и битом 1, равным 0
+     */
+    private static long matchEmpty(long word) {
+        return word & ~(word << 6) & MSB;
+    }
+
+    private static long matchEmptyOrDeleted(long word) {
+        return word & MSB;
+    }
+
+    private static long matchFull(long word) {
+        return ~word & MSB;
+    }
+
+    private static int slotOf(int group, long match) {
+        return group * GROUP_WIDTH + (Long.numberOfTrailingZeros(match) >>> 3);
+    }
+
+    private static int maxFill(int capacity) {
+        return capacity - capacity / 8;
+    }
+
+    /**
+     * @return степень двойки, не меньше одной группы, в которую expectedSize помещается с заполнением 7/8,
+     * или IllegalArgumentException, если не помещается и в {@link #MAXIMUM_CAPACITY}
+     */
+    private static int capacityFor(int expectedSize) {
+        if (expectedSize > maxFill(MAXIMUM_CAPACITY))
+            throw new IllegalArgumentException("Expected size is too large: " + expectedSize);
+        int capacity = GROUP_WIDTH;
+        while (maxFill(capacity) < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Обход групп: занятые ячейки группы находятся одной маской, пустые не проверяются по одной
+     */
+    private abstract class SlotIterator {
+        private int group;
+        private long full;
+        private int current = -1;
+
+        SlotIterator() {
+            full = matchFull(control[0]);
+            advance();
+        }
+
+        public boolean hasNext() {
+            return full != 0;
+        }
+
+        int nextSlot() {
+            if (full == 0)
+                throw new NoSuchElementException();
+            current = slotOf(group, full);
+            full &= full - 1;
+            advance();
+            return current;
+        }
+
+        /**
+         * Удаление только меняет управляющий байт ячейки, остальные ячейки не двигаются
+         */
+        public void remove() {
+            if (current < 0)
+                throw new IllegalStateException();
+            erase(current);
+            current = -1;
+        }
+
+        private void advance() {
+            while (full == 0 && group + 1 < control.length) {
+                full = matchFull(control[++group]);
+            }
+        }
+    }
+
+    private final class KeyIterator extends SlotIterator implements Iterator<K> {
+        @Override
+        public K next() {
+            return (K) keyData[nextSlot()];
+        }
+    }
+
+    private final class ValueIterator extends SlotIterator implements Iterator<V> {
+        @Override
+        public V next() {
+            return (V) valueData[nextSlot()];
+        }
+    }
+
+    private final class EntryIterator extends SlotIterator implements Iterator<Map.Entry<K, V>> {
+        @Override
+        public Map.Entry<K, V> next() {
+            return new SlotEntry(nextSlot());
+        }
+    }
+
+    /**
+     * Узлов нет, поэтому entry - это ссылка на ячейку
+     */
+    private final class SlotEntry implements Map.Entry<K, V> {
+        private final int slot;
+        private final K key;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+            this.key = (K) keyData[slot];
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return (V) valueData[slot];
+        }
+
+        @Override
+        public V setValue(V value) {
+            var oldValue = (V) valueData[slot];
+            valueData[slot] = value;
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Map.Entry<?, ?> that)) return false;
+            return Objects.equals(key, that.getKey()) && Objects.equals(getValue(), that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MySwissHashMap.this.clear();
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int slot = find(o);
+            if (slot < 0)
+                return false;
+            erase(slot);
+            return true;
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MySwissHashMap.this.clear();
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MySwissHashMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> entry))
+                return false;
+            int slot = find(entry.getKey());
+            return slot >= 0 && Objects.equals(valueData[slot], entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            erase(find(((Map.Entry<?, ?>) o).getKey()));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package org.example.map;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Таблица, данные которой лежат вне кучи, в direct ByteBuffer. Ключи и значения переводятся в байты
+ * через {@link Codec} и дописываются в конец слабов - больших буферов по {@link #DEFAULT_SLAB_SIZE} байт.
+ * Индекс - тоже direct буфер: открытая адресация с линейным пробированием, в ячейке hash ключа и ссылка на запись.
+ * В куче остаются только сами буферы, сколько бы ни было элементов, и сборщику мусора нечего обходить.
+ * <p>
+ * Ключи сравниваются по байтам, hash тоже считается по байтам ключа. Заменённые и удалённые записи остаются
+ * в слабах мусором, пока его не станет больше живых данных - тогда живые записи переписываются в новые слабы.
+ * get отсутствующего ключа возвращает null, null в качестве ключа или значения не принимается.
+ * Удаление через итератор не поддерживается, как и в {@link IntObjectHashMap}.
+ * После {@link #close()} буферы отпускаются (память вернётся, когда их соберёт GC), а любая операция
+ * бросает IllegalStateException. Таблица не потокобезопасна: даже get пишет ключ в общий буфер
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public class OffHeapHashMap<K, V> extends AbstractMap<K, V> implements Closeable {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int DEFAULT_SLAB_SIZE = 4 << 20;
+    /**
+     * Ячейка индекса: int hash, 4 байта выравнивания, long ссылка на запись (0 - ячейка пустая)
+     */
+    private static final int SLOT_SIZE = 16;
+    private static final int REF_OFFSET = 8;
+    /**
+     * Заголовок записи: int длина ключа, int длина значения. За ним байты ключа и значения
+     */
+    private static final int RECORD_HEADER = 8;
+    /**
+     * Индекс - один буфер, а буфер не бывает больше 2 ГБ
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 26;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final int slabSize;
+
+    private ByteBuffer index;
+    private int capacity;
+    private int resizeAt;
+    private int size;
+
+    private List<ByteBuffer> slabs;
+    /**
+     * Позиция записи в последнем слабе
+     */
+    private int slabPosition;
+    private long liveBytes;
+    private long garbageBytes;
+    /**
+     * Буфер в куче, в который кодируется ключ запроса
+     */
+    private ByteBuffer scratch = ByteBuffer.allocate(64);
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    public OffHeapHashMap(Codec<K> keyCodec, Codec<V> valueCodec) {
+        this(keyCodec, valueCodec, DEFAULT_INITIAL_CAPACITY, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param expectedSize сколько элементов можно вставить без перестройки индекса
+     * @param slabSize     размер одного слаба в байтах. Запись больше слаба получает свой слаб
+     */
+    public OffHeapHashMap(Codec<K> keyCodec, Codec<V> valueCodec, int expectedSize, int slabSize) {
+        if (expectedSize < 0 || slabSize <= RECORD_HEADER)
+            throw new IllegalArgumentException();
+        this.keyCodec = Objects.requireNonNull(keyCodec);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        this.slabSize = slabSize;
+        allocateIndex(capacityFor(expectedSize));
+        resetSlabs();
+    }
+
+    @Override
+    public int size() {
+        checkOpen();
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @param key
+     * @return значение или null
+     */
+    @Override
+    public V get(Object key) {
+        checkOpen();
+        int slot = findSlot(key);
+        return slot < 0 ? null : readValue(refAt(slot));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        checkOpen();
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * @return старое значение или null
+     */
+    @Override
+    public V put(K key, V value) {
+        checkOpen();
+        Objects.requireNonNull(value);
+        int keyLength = encodeKey(key);
+        int hash = hashBytes(scratch, keyLength);
+        int slot = hash & (capacity - 1);
+        for (long ref; (ref = refAt(slot)) != 0; slot = (slot + 1) & (capacity - 1)) {
+            if (hashAt(slot) == hash && keyEquals(ref, keyLength)) {
+                var oldValue = readValue(ref);
+                release(ref);
+                index.putLong(slot * SLOT_SIZE + REF_OFFSET, writeRecord(keyLength, value));
+                compactIfNeeded();
+                return oldValue;
+            }
+        }
+        index.putInt(slot * SLOT_SIZE, hash);
+        index.putLong(slot * SLOT_SIZE + REF_OFFSET, writeRecord(keyLength, value));
+        if (++size >= resizeAt)
+            rehash(capacity * 2);
+        return null;
+    }
+
+    /**
+     * @return удалённое значение или null
+     */
+    @Override
+    public V remove(Object key) {
+        checkOpen();
+        int slot = findSlot(key);
+        if (slot < 0)
+            return null;
+        long ref = refAt(slot);
+        var oldValue = readValue(ref);
+        release(ref);
+        shiftConflictingSlots(slot);
+        size--;
+        compactIfNeeded();
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        checkOpen();
+        allocateIndex(capacity);
+        resetSlabs();
+        size = 0;
+    }
+
+    /**
+     * Отпускает буферы. Повторный вызов ничего не делает
+     */
+    @Override
+    public void close() {
+        index = null;
+        slabs = null;
+        scratch = null;
+        size = 0;
+    }
+
+    /**
+     * @return сколько байт вне кучи занимают индекс и слабы
+     */
+    public long getAllocatedBytes() {
+        checkOpen();
+        long bytes = index.capacity();
+        for (ByteBuffer slab : slabs) {
+            bytes += slab.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Элементы читаются из буферов при обходе, entry - снимок, setValue пишет в таблицу через put
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        checkOpen();
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    private void checkOpen() {
+        if (index == null)
+            throw new IllegalStateException("Map is closed");
+    }
+
+    /**
+     * Кодирует ключ в {@link #scratch}
+     *
+     * @return длина ключа в байтах
+     */
+    private int encodeKey(Object key) {
+        Objects.requireNonNull(key);
+        var typedKey = (K) key;
+        int length = keyCodec.sizeOf(typedKey);
+        if (scratch.capacity() < length)
+            scratch = ByteBuffer.allocate(Math.max(length, scratch.capacity() * 2));
+        scratch.clear();
+        keyCodec.write(scratch, typedKey);
+        if (scratch.position() != length)
+            throw new IllegalStateException("Codec wrote " + scratch.position() + " bytes instead of " + length);
+        return length;
+    }
+
+    /**
+     * @return ячейка индекса или -1
+     */
+    private int findSlot(Object key) {
+        int keyLength = encodeKey(key);
+        int hash = hashBytes(scratch, keyLength);
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long ref = refAt(slot);
+            if (ref == 0)
+                return -1;
+            if (hashAt(slot) == hash && keyEquals(ref, keyLength))
+                return slot;
+        }
+    }
+
+    private int hashAt(int slot) {
+        return index.getInt(slot * SLOT_SIZE);
+    }
+
+    private long refAt(int slot) {
+        return index.getLong(slot * SLOT_SIZE + REF_OFFSET);
+    }
+
+    /**
+     * Дописывает запись из ключа в {@link #scratch} и value
+     *
+     * @return ссылка на запись
+     */
+    private long writeRecord(int keyLength, V value) {
+        int valueLength = valueCodec.sizeOf(value);
+        long ref = allocate(RECORD_HEADER + keyLength + valueLength);
+        var slab = slabOf(ref);
+        int offset = offsetOf(ref);
+        slab.putInt(offset, keyLength);
+        slab.putInt(offset + 4, valueLength);
+        slab.put(offset + RECORD_HEADER, scratch, 0, keyLength);
+        slab.position(offset + RECORD_HEADER + keyLength);
+        valueCodec.write(slab, value);
+        if (slab.position() != offset + RECORD_HEADER + keyLength + valueLength)
+            throw new IllegalStateException("Codec wrote a different number of bytes than sizeOf returned");
+        return ref;
+    }
+
+    /**
+     * Выделяет место под запись: в конце последнего слаба или в новом слабе
+     *
+     * @return ссылка: (номер слаба &lt;&lt; 32 | смещение) + 1, чтобы 0 оставался пустой ячейкой
+     */
+    private long allocate(int recordSize) {
+        var slab = slabs.get(slabs.size() - 1);
+        if (slab.capacity() - slabPosition < recordSize) {
+            slab = ByteBuffer.allocateDirect(Math.max(slabSize, recordSize));
+            slabs.add(slab);
+            slabPosition = 0;
+        }
+        long ref = (((long) (slabs.size() - 1) << 32) | slabPosition) + 1;
+        slabPosition += recordSize;
+        liveBytes += recordSize;
+        return ref;
+    }
+
+    /**
+     * Запись стала мусором
+     */
+    private void release(long ref) {
+        int recordSize = recordSize(ref);
+        liveBytes -= recordSize;
+        garbageBytes += recordSize;
+    }
+
+    private ByteBuffer slabOf(long ref) {
+        return slabs.get((int) ((ref - 1) >>> 32));
+    }
+
+    private static int offsetOf(long ref) {
+        return (int) (ref - 1);
+    }
+
+    private int recordSize(long ref) {
+        var slab = slabOf(ref);
+        int offset = offsetOf(ref);
+        return RECORD_HEADER + slab.getInt(offset) + slab.getInt(offset + 4);
+    }
+
+    private K readKey(long ref) {
+        var slab = slabOf(ref);
+        int offset = offsetOf(ref);
+        slab.position(offset + RECORD_HEADER);
+        return keyCodec.read(slab, slab.getInt(offset));
+    }
+
+    private V readValue(long ref) {
+        var slab = slabOf(ref);
+        int offset = offsetOf(ref);
+        int keyLength = slab.getInt(offset);
+        slab.position(offset + RECORD_HEADER + keyLength);
+        return valueCodec.read(slab, slab.getInt(offset + 4));
+    }
+
+    /**
+     * Сравнение ключа записи с ключом в {@link #scratch} по 8 байт
+     */
+    private boolean keyEquals(long ref, int keyLength) {
+        var slab = slabOf(ref);
+        int offset = offsetOf(ref);
+        if (slab.getInt(offset) != keyLength)
+            return false;
+        offset += RECORD_HEADER;
+        int i = 0;
+        for (; i + Long.BYTES <= keyLength; i += Long.BYTES) {
+            if (slab.getLong(offset + i) != scratch.getLong(i))
+                return false;
+        }
+        for (; i < keyLength; i++) {
+            if (slab.get(offset + i) != scratch.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Когда мусора в слабах становится больше живых данных, живые записи переписываются в новые слабы
+     */
+    private void compactIfNeeded() {
+        if (garbageBytes <= liveBytes || garbageBytes <= slabSize)
+            return;
+        var oldSlabs = slabs;
+        resetSlabs();
+        for (int slot = 0; slot < capacity; slot++) {
+            long ref = refAt(slot);
+            if (ref == 0)
+                continue;
+            var oldSlab = oldSlabs.get((int) ((ref - 1) >>> 32));
+            int oldOffset = offsetOf(ref);
+            int recordSize = RECORD_HEADER + oldSlab.getInt(oldOffset) + oldSlab.getInt(oldOffset + 4);
+            long newRef = allocate(recordSize);
+            slabOf(newRef).put(offsetOf(newRef), oldSlab, oldOffset, recordSize);
+            index.putLong(slot * SLOT_SIZE + REF_OFFSET, newRef);
+        }
+    }
+
+    private void resetSlabs() {
+        slabs = new ArrayList<>();
+        slabs.add(ByteBuffer.allocateDirect(slabSize));
+        slabPosition = 0;
+        liveBytes = 0;
+        garbageBytes = 0;
+    }
+
+    /**
+     * Удаление без "надгробий", как в {@link IntObjectHashMap}: ячейки дальше по цепочке проб сдвигаются в дыру
+     *
+     * @param gap - освобождённая ячейка
+     */
+    private void shiftConflictingSlots(int gap) {
+        int mask = capacity - 1;
+        int distance = 0;
+        while (true) {
+            int slot = (gap + (++distance)) & mask;
+            long ref = refAt(slot);
+            if (ref == 0)
+                break;
+            int hash = hashAt(slot);
+            if (((slot - hash) & mask) >= distance) {
+                index.putInt(gap * SLOT_SIZE, hash);
+                index.putLong(gap * SLOT_SIZE + REF_OFFSET, ref);
+                gap = slot;
+                distance = 0;
+            }
+        }
+        index.putInt(gap * SLOT_SIZE, 0);
+        index.putLong(gap * SLOT_SIZE + REF_OFFSET, 0);
+    }
+
+    /**
+     * Перестройка индекса по сохранённым hash, записи в слабах не трогаются
+     */
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAXIMUM_CAPACITY)
+            throw new IllegalStateException("Index is full");
+        var oldIndex = index;
+        int oldCapacity = capacity;
+        allocateIndex(newCapacity);
+        int mask = newCapacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            long ref = oldIndex.getLong(oldSlot * SLOT_SIZE + REF_OFFSET);
+            if (ref == 0)
+                continue;
+            int hash = oldIndex.getInt(oldSlot * SLOT_SIZE);
+            int slot = hash & mask;
+            while (refAt(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index.putInt(slot * SLOT_SIZE, hash);
+            index.putLong(slot * SLOT_SIZE + REF_OFFSET, ref);
+        }
+    }
+
+    private void allocateIndex(int capacity) {
+        this.index = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        this.capacity = capacity;
+        this.resizeAt = Math.min(capacity - 1, (int) (capacity * LOAD_FACTOR));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = DEFAULT_INITIAL_CAPACITY;
+        while (capacity * LOAD_FACTOR <= expectedSize && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * hash байт ключа: по 8 байт за шаг, в конце финализатор murmur3.
+     * Зависит только от байт, поэтому одинаков между запусками JVM (на этом держится {@link MappedHashMap})
+     */
+    static int hashBytes(ByteBuffer buffer, int length) {
+        long hash = length * 0x9E3779B97F4A7C15L;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            hash = Long.rotateLeft(hash ^ buffer.getLong(i) * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+        }
+        for (; i < length; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xff)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return OffHeapHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            OffHeapHashMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            checkOpen();
+            return new Iterator<>() {
+                private int slot = nextSlot(-1);
+
+                @Override
+                public boolean hasNext() {
+                    return slot < capacity;
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    long ref = refAt(slot);
+                    slot = nextSlot(slot);
+                    return new Entry(readKey(ref), readValue(ref));
+                }
+
+                private int nextSlot(int from) {
+                    int next = from + 1;
+                    while (next < capacity && refAt(next) == 0) {
+                        next++;
+                    }
+                    return next;
+                }
+            };
+        }
+    }
+
+    private final class Entry extends AbstractMap.SimpleEntry<K, V> {
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
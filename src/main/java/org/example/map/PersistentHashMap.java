@@ -0,0 +1,662 @@
+package org.example.map;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Неизменяемая карта на префиксном дереве по hash (HAMT, раскладка CHAMP). Каждый узел разбирает 5 бит hash:
+ * пары ключ-значение лежат в начале массива узла по битам dataMap, ссылки на подузлы - в конце по битам nodeMap.
+ * {@link #with(Object, Object)} и {@link #without(Object)} копируют только путь от корня до изменённого узла
+ * (не больше 7 узлов по 32 ячейки), остальное дерево новая версия делит со старой. Поэтому снимок - это
+ * просто ссылка на версию, а читать её можно из любого потока без синхронизации.
+ * <p>
+ * Для пакетных изменений есть {@link #asTransient()}: узлы, созданные одним {@link Transient}, меняются
+ * на месте, пока он не отдаст результат через {@link Transient#persistent()}.
+ * <p>
+ * Ключи с одинаковым hash после 7 уровней попадают в {@link CollisionNode} и просматриваются по очереди.
+ * Контракт чтения тот же, что у {@link MyHashMap}: get отсутствующего ключа - NoSuchElementException,
+ * containsValue сравнивает значения по ссылке. Изменения через интерфейс Map - UnsupportedOperationException
+ *
+ * @param <K>
+ * @param <V>
+ * @author Dasdassand
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    /**
+     * Уровней с битовыми картами: 32 бита hash по 5, последний уровень - 2 бита
+     */
+    private static final int MAX_DEPTH = (Integer.SIZE + BITS - 1) / BITS;
+    private static final Object ABSENT = new Object();
+    private static final BitmapNode EMPTY_NODE = new BitmapNode(null, 0, 0, new Object[0]);
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(EMPTY_NODE, 0);
+
+    private final Node root;
+    private final int size;
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> source) {
+        if (source instanceof PersistentHashMap)
+            return (PersistentHashMap<K, V>) source;
+        var result = PersistentHashMap.<K, V>empty().asTransient();
+        for (Map.Entry<? extends K, ? extends V> entry : source.entrySet()) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result.persistent();
+    }
+
+    /**
+     * @return версия с парой key-value. Если там уже это же значение (по ссылке) - эта же версия
+     */
+    public PersistentHashMap<K, V> with(K key, V value) {
+        var change = new Change();
+        var newRoot = root.put(null, 0, hash(key), key, value, change);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, size + change.sizeDelta);
+    }
+
+    /**
+     * @return версия без key. Если ключа нет - эта же версия
+     */
+    public PersistentHashMap<K, V> without(Object key) {
+        var change = new Change();
+        var newRoot = root.remove(null, 0, hash(key), key, change);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, size + change.sizeDelta);
+    }
+
+    /**
+     * @return изменяемая копия, которая делит с этой версией все узлы, пока не начнёт их менять
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<>(root, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root.find(0, hash(key), key) != ABSENT;
+    }
+
+    /**
+     * @param value value whose presence in this map is to be tested
+     * @return true - если значение (именно этот объект) содержится в карте
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        var iterator = new NodeIterator(root);
+        while (iterator.hasNext()) {
+            if (iterator.nextValue() == value)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return value по указанному ключу или NoSuchElementException
+     */
+    @Override
+    public V get(Object key) {
+        var value = root.find(0, hash(key), key);
+        if (value == ABSENT)
+            throw new NoSuchElementException();
+        return (V) value;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        var value = root.find(0, hash(key), key);
+        return value == ABSENT ? defaultValue : (V) value;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    private static int hash(Object key) {
+        return HashSpreading.MURMUR3.spread(Objects.hashCode(key));
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Узлы не сериализуются: hashCode ключей в другой JVM может быть другим, поэтому пишутся только пары
+     */
+    @Serial
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("SerializedForm required");
+    }
+
+    private record SerializedForm(Object[] keys, Object[] values) implements Serializable {
+        private SerializedForm(PersistentHashMap<?, ?> map) {
+            this(new Object[map.size], new Object[map.size]);
+            var iterator = new NodeIterator(map.root);
+            for (int i = 0; iterator.hasNext(); i++) {
+                keys[i] = iterator.node.getKey(iterator.index);
+                values[i] = iterator.nextValue();
+            }
+        }
+
+        @Serial
+        private Object readResolve() throws InvalidObjectException {
+            if (keys == null || values == null || keys.length != values.length)
+                throw new InvalidObjectException("Illegal PersistentHashMap state");
+            var result = PersistentHashMap.empty().asTransient();
+            for (int i = 0; i < keys.length; i++) {
+                result.put(keys[i], values[i]);
+            }
+            return result.persistent();
+        }
+    }
+
+    /**
+     * Изменяемая обёртка над деревом для пакетных правок. Узлы, созданные этим объектом, помечены его {@link Edit}
+     * и при следующих правках меняются на месте, а общие с другими версиями узлы копируются, как обычно.
+     * Не потокобезопасен. После {@link #persistent()} пользоваться им нельзя
+     */
+    public static final class Transient<K, V> {
+        private Edit edit = new Edit();
+        private Node root;
+        private int size;
+
+        private Transient(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        public Transient<K, V> put(K key, V value) {
+            ensureEditable();
+            var change = new Change();
+            root = root.put(edit, 0, hash(key), key, value, change);
+            size += change.sizeDelta;
+            return this;
+        }
+
+        /**
+         * Отсутствующий ключ не ошибка: пакетная правка просто его пропускает
+         */
+        public Transient<K, V> remove(Object key) {
+            ensureEditable();
+            var change = new Change();
+            root = root.remove(edit, 0, hash(key), key, change);
+            size += change.sizeDelta;
+            return this;
+        }
+
+        public V get(Object key) {
+            ensureEditable();
+            var value = root.find(0, hash(key), key);
+            if (value == ABSENT)
+                throw new NoSuchElementException();
+            return (V) value;
+        }
+
+        public boolean containsKey(Object key) {
+            ensureEditable();
+            return root.find(0, hash(key), key) != ABSENT;
+        }
+
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        /**
+         * @return неизменяемая версия. Узлы больше не принадлежат этому объекту, и он перестаёт работать
+         */
+        public PersistentHashMap<K, V> persistent() {
+            ensureEditable();
+            edit = null;
+            return size == 0 ? empty() : new PersistentHashMap<>(root, size);
+        }
+
+        private void ensureEditable() {
+            if (edit == null)
+                throw new IllegalStateException("Transient used after persistent()");
+        }
+    }
+
+    /**
+     * Метка владельца: узел с той же меткой, что у текущей правки, можно менять на месте
+     */
+    private static final class Edit {
+    }
+
+    /**
+     * На сколько изменился размер. Узлы возвращают новый узел, а размер - через этот объект
+     */
+    private static final class Change {
+        private int sizeDelta;
+    }
+
+    private abstract static class Node {
+        /**
+         * @return значение или {@link #ABSENT}
+         */
+        abstract Object find(int shift, int hash, Object key);
+
+        /**
+         * @return этот же узел, если ничего не изменилось
+         */
+        abstract Node put(Edit edit, int shift, int hash, Object key, Object value, Change change);
+
+        /**
+         * @return этот же узел, если ключа нет
+         */
+        abstract Node remove(Edit edit, int shift, int hash, Object key, Change change);
+
+        abstract int payloadArity();
+
+        abstract int nodeArity();
+
+        abstract Object getKey(int index);
+
+        abstract Object getValue(int index);
+
+        abstract Node getNode(int index);
+
+        /**
+         * Узел из одной пары родитель забирает к себе в массив
+         */
+        boolean hasSinglePayload() {
+            return payloadArity() == 1 && nodeArity() == 0;
+        }
+    }
+
+    /**
+     * Узел дерева: [k0, v0, k1, v1, ..., подузел1, подузел0]. Пары идут по возрастанию бит dataMap,
+     * подузлы - по возрастанию бит nodeMap с конца массива
+     */
+    private static final class BitmapNode extends Node {
+        private final Edit edit;
+        private final int dataMap;
+        private final int nodeMap;
+        private final Object[] array;
+
+        private BitmapNode(Edit edit, int dataMap, int nodeMap, Object[] array) {
+            this.edit = edit;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                return Objects.equals(array[2 * index], key) ? array[2 * index + 1] : ABSENT;
+            }
+            if ((nodeMap & bit) != 0)
+                return nodeAt(bit).find(shift + BITS, hash, key);
+            return ABSENT;
+        }
+
+        @Override
+        Node put(Edit edit, int shift, int hash, Object key, Object value, Change change) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                var existingKey = array[2 * index];
+                if (Objects.equals(existingKey, key)) {
+                    if (array[2 * index + 1] == value)
+                        return this;
+                    return withSlot(edit, 2 * index + 1, value);
+                }
+                var existingValue = array[2 * index + 1];
+                var merged = merge(edit, shift + BITS, hash(existingKey), existingKey, existingValue,
+                        hash, key, value);
+                change.sizeDelta = 1;
+                return migrateToNode(edit, bit, index, merged);
+            }
+            if ((nodeMap & bit) != 0) {
+                var node = nodeAt(bit);
+                var newNode = node.put(edit, shift + BITS, hash, key, value, change);
+                return newNode == node ? this : withSlot(edit, nodeSlot(bit), newNode);
+            }
+            change.sizeDelta = 1;
+            int index = dataIndex(bit);
+            var newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * index);
+            newArray[2 * index] = key;
+            newArray[2 * index + 1] = value;
+            System.arraycopy(array, 2 * index, newArray, 2 * index + 2, array.length - 2 * index);
+            return new BitmapNode(edit, dataMap | bit, nodeMap, newArray);
+        }
+
+        @Override
+        Node remove(Edit edit, int shift, int hash, Object key, Change change) {
+            int bit = bitpos(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                if (!Objects.equals(array[2 * index], key))
+                    return this;
+                change.sizeDelta = -1;
+                if (payloadArity() == 2 && nodeArity() == 0) {
+                    // остаётся одна пара: бит считается для уровня 0, чтобы узел годился и в корень,
+                    // а ниже родитель всё равно заберёт пару к себе
+                    int other = 1 - index;
+                    int newDataMap = shift == 0 ? dataMap ^ bit : bitpos(hash(array[2 * other]), 0);
+                    return new BitmapNode(edit, newDataMap, 0, new Object[]{array[2 * other], array[2 * other + 1]});
+                }
+                var newArray = new Object[array.length - 2];
+                System.arraycopy(array, 0, newArray, 0, 2 * index);
+                System.arraycopy(array, 2 * index + 2, newArray, 2 * index, array.length - 2 * index - 2);
+                return new BitmapNode(edit, dataMap ^ bit, nodeMap, newArray);
+            }
+            if ((nodeMap & bit) != 0) {
+                var node = nodeAt(bit);
+                var newNode = node.remove(edit, shift + BITS, hash, key, change);
+                if (newNode == node)
+                    return this;
+                if (newNode.hasSinglePayload()) {
+                    if (payloadArity() == 0 && nodeArity() == 1)
+                        return newNode;
+                    return migrateToInline(edit, bit, newNode);
+                }
+                return withSlot(edit, nodeSlot(bit), newNode);
+            }
+            return this;
+        }
+
+        /**
+         * Узел для двух пар с разными ключами, которые до shift совпадают по hash
+         */
+        private static Node merge(Edit edit, int shift, int hash0, Object key0, Object value0,
+                                  int hash1, Object key1, Object value1) {
+            if (shift >= Integer.SIZE)
+                return new CollisionNode(edit, hash0, new Object[]{key0, value0, key1, value1});
+            int bit0 = bitpos(hash0, shift);
+            int bit1 = bitpos(hash1, shift);
+            if (bit0 == bit1)
+                return new BitmapNode(edit, 0, bit0,
+                        new Object[]{merge(edit, shift + BITS, hash0, key0, value0, hash1, key1, value1)});
+            var array = Integer.compareUnsigned(bit0, bit1) < 0
+                    ? new Object[]{key0, value0, key1, value1}
+                    : new Object[]{key1, value1, key0, value0};
+            return new BitmapNode(edit, bit0 | bit1, 0, array);
+        }
+
+        /**
+         * Ячейку своего узла правка меняет на месте, чужого - в копии
+         */
+        private BitmapNode withSlot(Edit edit, int slot, Object value) {
+            if (edit != null && edit == this.edit) {
+                array[slot] = value;
+                return this;
+            }
+            var newArray = array.clone();
+            newArray[slot] = value;
+            return new BitmapNode(edit, dataMap, nodeMap, newArray);
+        }
+
+        /**
+         * Пара index уходит из данных в новый подузел node
+         */
+        private BitmapNode migrateToNode(Edit edit, int bit, int index, Node node) {
+            int oldNodeSlot = array.length - Integer.bitCount(nodeMap & (bit - 1));
+            var newArray = new Object[array.length - 1];
+            System.arraycopy(array, 0, newArray, 0, 2 * index);
+            System.arraycopy(array, 2 * index + 2, newArray, 2 * index, oldNodeSlot - 2 * index - 2);
+            newArray[oldNodeSlot - 2] = node;
+            System.arraycopy(array, oldNodeSlot, newArray, oldNodeSlot - 1, array.length - oldNodeSlot);
+            return new BitmapNode(edit, dataMap ^ bit, nodeMap | bit, newArray);
+        }
+
+        /**
+         * Единственная пара подузла node переезжает в данные этого узла
+         */
+        private BitmapNode migrateToInline(Edit edit, int bit, Node node) {
+            int oldNodeSlot = nodeSlot(bit);
+            int index = dataIndex(bit);
+            var newArray = new Object[array.length + 1];
+            System.arraycopy(array, 0, newArray, 0, 2 * index);
+            newArray[2 * index] = node.getKey(0);
+            newArray[2 * index + 1] = node.getValue(0);
+            System.arraycopy(array, 2 * index, newArray, 2 * index + 2, oldNodeSlot - 2 * index);
+            System.arraycopy(array, oldNodeSlot + 1, newArray, oldNodeSlot + 2, array.length - oldNodeSlot - 1);
+            return new BitmapNode(edit, dataMap | bit, nodeMap ^ bit, newArray);
+        }
+
+        private int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        private int nodeSlot(int bit) {
+            return array.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        private Node nodeAt(int bit) {
+            return (Node) array[nodeSlot(bit)];
+        }
+
+        @Override
+        int payloadArity() {
+            return Integer.bitCount(dataMap);
+        }
+
+        @Override
+        int nodeArity() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        @Override
+        Object getKey(int index) {
+            return array[2 * index];
+        }
+
+        @Override
+        Object getValue(int index) {
+            return array[2 * index + 1];
+        }
+
+        @Override
+        Node getNode(int index) {
+            return (Node) array[array.length - 1 - index];
+        }
+    }
+
+    /**
+     * Пары с одинаковым hash ниже последнего уровня: [k0, v0, k1, v1, ...]
+     */
+    private static final class CollisionNode extends Node {
+        private final Edit edit;
+        private final int hash;
+        private final Object[] array;
+
+        private CollisionNode(Edit edit, int hash, Object[] array) {
+            this.edit = edit;
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int index = indexOf(key);
+            return index < 0 ? ABSENT : array[index + 1];
+        }
+
+        @Override
+        Node put(Edit edit, int shift, int hash, Object key, Object value, Change change) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (array[index + 1] == value)
+                    return this;
+                if (edit != null && edit == this.edit) {
+                    array[index + 1] = value;
+                    return this;
+                }
+                var newArray = array.clone();
+                newArray[index + 1] = value;
+                return new CollisionNode(edit, this.hash, newArray);
+            }
+            change.sizeDelta = 1;
+            var newArray = Arrays.copyOf(array, array.length + 2);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(edit, this.hash, newArray);
+        }
+
+        @Override
+        Node remove(Edit edit, int shift, int hash, Object key, Change change) {
+            int index = indexOf(key);
+            if (index < 0)
+                return this;
+            change.sizeDelta = -1;
+            if (array.length == 4) {
+                int other = 2 - index;
+                return new BitmapNode(edit, bitpos(this.hash, 0), 0, new Object[]{array[other], array[other + 1]});
+            }
+            var newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            return new CollisionNode(edit, this.hash, newArray);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (Objects.equals(array[i], key))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        int payloadArity() {
+            return array.length / 2;
+        }
+
+        @Override
+        int nodeArity() {
+            return 0;
+        }
+
+        @Override
+        Object getKey(int index) {
+            return array[2 * index];
+        }
+
+        @Override
+        Object getValue(int index) {
+            return array[2 * index + 1];
+        }
+
+        @Override
+        Node getNode(int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+    }
+
+    /**
+     * Обход в глубину: сначала пары узла, потом его подузлы. Стек не глубже {@link #MAX_DEPTH} + 1
+     */
+    private static class NodeIterator {
+        private final Node[] nodes = new Node[MAX_DEPTH + 1];
+        private final int[] nextNode = new int[MAX_DEPTH + 1];
+        private int depth = -1;
+        /**
+         * Узел, пары которого сейчас отдаются, и индекс следующей пары
+         */
+        Node node;
+        int index;
+
+        NodeIterator(Node root) {
+            push(root);
+        }
+
+        private void push(Node node) {
+            nodes[++depth] = node;
+            nextNode[depth] = 0;
+            this.node = node;
+            index = 0;
+        }
+
+        public boolean hasNext() {
+            while (node == null || index >= node.payloadArity()) {
+                if (depth < 0)
+                    return false;
+                var top = nodes[depth];
+                if (nextNode[depth] < top.nodeArity()) {
+                    push(top.getNode(nextNode[depth]++));
+                } else {
+                    nodes[depth--] = null;
+                    node = null;
+                }
+            }
+            return true;
+        }
+
+        Object nextValue() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return node.getValue(index++);
+        }
+    }
+
+    private final class EntryIterator extends NodeIterator implements Iterator<Map.Entry<K, V>> {
+        EntryIterator() {
+            super(root);
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            var key = (K) node.getKey(index);
+            return new SimpleImmutableEntry<>(key, (V) nextValue());
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> entry))
+                return false;
+            var value = root.find(0, hash(entry.getKey()), entry.getKey());
+            return value != ABSENT && Objects.equals(value, entry.getValue());
+        }
+    }
+}
@@ -5,8 +5,10 @@ import org.example.list.MyArrayList;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.*;
 import java.lang.reflect.Field;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -191,4 +193,50 @@ public class MyArrayListTest {
         assertEquals(listIteratorSI0.next(), testList.get(0));
     }
 
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        MyArrayList<String> list = new MyArrayList<>(1000);
+        for (int i = 0; i < 10; i++) {
+            list.add("element" + i);
+        }
+        list.add(null);
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(list);
+        }
+        MyArrayList<String> copy;
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (MyArrayList<String>) in.readObject();
+        }
+        assertEquals(11, copy.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("element" + i, copy.get(i));
+        }
+        assertNull(copy.get(10));
+        assertTrue(bytes.size() < 1000, "unused capacity is not written: " + bytes.size());
+        copy.add("next");
+        assertEquals("next", copy.get(11));
+    }
+
+    @Test
+    public void testSpliterator() {
+        MyArrayList<Integer> list = new MyArrayList<>();
+        var lazy = list.spliterator();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+        assertEquals(1000, lazy.estimateSize());
+        var spliterator = list.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+        var prefix = spliterator.trySplit();
+        assertEquals(500, prefix.getExactSizeIfKnown());
+        assertEquals(500, spliterator.getExactSizeIfKnown());
+        assertTrue(prefix.tryAdvance(value -> assertEquals(0, value)));
+        assertEquals(499, prefix.estimateSize());
+        int[] next = {500};
+        spliterator.forEachRemaining(value -> assertEquals(next[0]++, value));
+        assertEquals(1000, next[0]);
+        assertEquals(499500, list.parallelStream().mapToInt(Integer::intValue).sum());
+        assertEquals(list.stream().toList(), list.parallelStream().toList());
+    }
 }
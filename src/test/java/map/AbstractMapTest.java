@@ -0,0 +1,201 @@
+package map;
+
+import entity.TestEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Общий набор тестов контракта Map для всех реализаций из org.example.map
+ */
+public abstract class AbstractMapTest {
+    protected Map<Integer, TestEntity> map;
+    protected final Random random = new Random();
+
+    protected abstract <K, V> Map<K, V> createMap();
+
+    @BeforeEach
+    public void setUp() {
+        map = createMap();
+        for (int i = 0; i < 1000; i++) {
+            map.put(random.nextInt(1000), TestEntity.build());
+        }
+    }
+
+    @Test
+    public void testCRUDMethods() {
+        var keys = map.keySet();
+        var values = map.values();
+        var entrySet = map.entrySet();
+        assertEquals(entrySet.size(), keys.size());
+        for (Integer key :
+                keys) {
+            assertTrue(values.contains(map.get(key)));
+        }
+        var testEntity = new TestEntity(18, TestEntity.Sex.M);
+        map.put(100000, testEntity);
+        assertEquals(testEntity, map.get(100000));
+        map.remove(100000);
+        assertFalse(map.containsKey(100000));
+        Map<Integer, TestEntity> map1 = new HashMap<>();
+        for (int i = 0; i < random.nextInt(100); i++) {
+            map.put(random.nextInt(100), TestEntity.build());
+        }
+        map.putAll(map1);
+        keys = map1.keySet();
+        for (Integer key :
+                keys) {
+            assertEquals(map.get(key), map1.get(key));
+        }
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertTrue(map.keySet().isEmpty());
+        assertTrue(map.values().isEmpty());
+        assertTrue(map.entrySet().isEmpty());
+    }
+
+    @Test
+    public void testContainsMethods() {
+        var testEntity = new TestEntity(18, TestEntity.Sex.M);
+        map.put(100000, testEntity);
+        assertTrue(map.containsKey(100000));
+        assertTrue(map.containsValue(testEntity));
+        map.remove(100000);
+        assertFalse(map.containsKey(100000));
+        assertFalse(map.containsValue(testEntity));
+    }
+
+    /**
+     * Все ключи с одним hash: несравнимые (порядок по identityHashCode) и Comparable
+     */
+    @Test
+    public void testEqualHashKeys() {
+        Map<Object, Integer> collisions = createMap();
+        for (int i = 0; i < 2000; i++) {
+            collisions.put(new CollidingKey(i), i);
+            collisions.put(new ComparableCollidingKey(i), -i);
+        }
+        assertEquals(4000, collisions.size());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i, collisions.get(new CollidingKey(i)));
+            assertEquals(-i, collisions.get(new ComparableCollidingKey(i)));
+        }
+        for (int i = 0; i < 2000; i += 2) {
+            assertEquals(i, collisions.remove(new CollidingKey(i)));
+            assertEquals(-i, collisions.remove(new ComparableCollidingKey(i)));
+        }
+        assertEquals(2000, collisions.size());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i % 2 == 1, collisions.containsKey(new CollidingKey(i)));
+            assertEquals(i % 2 == 1, collisions.containsKey(new ComparableCollidingKey(i)));
+        }
+    }
+
+    /**
+     * Методы Map по умолчанию для отсутствующего ключа не должны упираться в get, который его не прощает
+     */
+    @Test
+    public void testAbsentKeyDefaults() {
+        Map<String, Integer> defaults = createMap();
+        defaults.put("a", 1);
+        assertEquals(5, defaults.getOrDefault("zz", 5));
+        assertNull(defaults.putIfAbsent("xx", 7));
+        assertEquals(7, defaults.putIfAbsent("xx", 8));
+        assertEquals(7, defaults.computeIfAbsent("yy", key -> 7));
+        assertNull(defaults.computeIfAbsent("ww", key -> null));
+        assertNull(defaults.computeIfPresent("ww", (key, value) -> 1));
+        assertEquals(5, defaults.merge("zz", 5, Integer::sum));
+        assertEquals(10, defaults.merge("zz", 5, Integer::sum));
+        assertNull(defaults.merge("zz", 1, (oldValue, value) -> null));
+        assertEquals(3, defaults.compute("vv", (key, value) -> value == null ? 3 : value + 1));
+        assertEquals(4, defaults.compute("vv", (key, value) -> value == null ? 3 : value + 1));
+        assertNull(defaults.compute("uu", (key, value) -> null));
+        assertEquals(2, defaults.computeIfPresent("a", (key, value) -> value + 1));
+        assertNull(defaults.computeIfPresent("a", (key, value) -> null));
+        assertEquals(Map.of("xx", 7, "yy", 7, "vv", 4), new HashMap<>(defaults));
+        assertEquals(3, defaults.size());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Map<Integer, Integer> actual = createMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(5000) * 4096;
+            if (random.nextInt(3) == 0 && expected.containsKey(key)) {
+                assertEquals(expected.remove(key), actual.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), actual.put(key, i));
+            }
+        }
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testViews() {
+        Map<Integer, Integer> views = createMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            int key = i % 3 == 0 ? i * 1024 : i;
+            views.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(expected.keySet(), views.keySet());
+        assertEquals(expected.entrySet(), views.entrySet());
+        assertSame(views.keySet(), views.keySet());
+        assertSame(views.entrySet(), views.entrySet());
+        assertEquals(expected.values().stream().mapToLong(Integer::longValue).sum(),
+                views.values().stream().mapToLong(Integer::longValue).sum());
+
+        for (Map.Entry<Integer, Integer> entry : views.entrySet()) {
+            entry.setValue(entry.getValue() + 1);
+        }
+        var iterator = views.keySet().iterator();
+        while (iterator.hasNext()) {
+            var key = iterator.next();
+            if (key % 2 == 0) {
+                iterator.remove();
+                expected.remove(key);
+            }
+        }
+        assertEquals(expected.size(), views.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue() + 1, views.get(entry.getKey()));
+        }
+
+        assertTrue(views.keySet().remove(1));
+        assertFalse(views.keySet().remove(1));
+        assertFalse(views.containsKey(1));
+        views.values().clear();
+        assertTrue(views.isEmpty());
+        assertFalse(views.entrySet().iterator().hasNext());
+    }
+
+    protected record CollidingKey(int id) {
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+    }
+
+    protected record ComparableCollidingKey(int id) implements Comparable<ComparableCollidingKey> {
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public int compareTo(ComparableCollidingKey o) {
+            return Integer.compare(id, o.id);
+        }
+    }
+}
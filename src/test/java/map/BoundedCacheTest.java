@@ -0,0 +1,208 @@
+package map;
+
+import org.example.map.BoundedCache;
+import org.example.map.BoundedCache.EvictionPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedCacheTest extends AbstractMapTest {
+
+    @Override
+    protected <K, V> Map<K, V> createMap() {
+        return new BoundedCache<>(Long.MAX_VALUE, EvictionPolicy.W_TINY_LFU);
+    }
+
+    @Test
+    public void testLruOrder() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(3, EvictionPolicy.LRU);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        assertEquals("1", cache.get(1));
+        cache.put(4, "4");
+        assertEquals(3, cache.size());
+        assertFalse(cache.containsKey(2));
+        cache.put(3, "33");
+        cache.put(5, "5");
+        assertFalse(cache.containsKey(1));
+        assertEquals(List.of(3, 4, 5), cache.keySet().stream().sorted().toList());
+        var stats = cache.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(2, stats.evictionCount());
+    }
+
+    /**
+     * Случайные операции с коллизиями (деревья в корзинах и их разбор при удалении) против LinkedHashMap
+     * в порядке доступа
+     */
+    @Test
+    public void testLruMatchesLinkedHashMap() {
+        int maximum = 200;
+        BoundedCache<Object, Integer> cache = new BoundedCache<>(maximum, EvictionPolicy.LRU);
+        Map<Object, Integer> expected = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Integer> eldest) {
+                return size() > maximum;
+            }
+        };
+        for (int i = 0; i < 100000; i++) {
+            int id = random.nextInt(400);
+            Object key = id % 2 == 0 ? new CollidingKey(id) : id;
+            switch (random.nextInt(4)) {
+                case 0 -> assertEquals(expected.get(key), cache.getIfPresent(key));
+                case 1 -> {
+                    if (expected.containsKey(key))
+                        assertEquals(expected.remove(key), cache.remove(key));
+                }
+                default -> {
+                    expected.put(key, i);
+                    cache.put(key, i);
+                }
+            }
+            assertEquals(expected.size(), cache.size());
+            assertEquals(expected.size(), cache.getWeightedSize());
+        }
+        for (var entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), cache.getIfPresent(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testWeight() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, (key, value) -> value.length(),
+                EvictionPolicy.LRU);
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        assertEquals(8, cache.getWeightedSize());
+        cache.put(3, "cc");
+        assertEquals(10, cache.getWeightedSize());
+        cache.put(2, "bbbbbb");
+        assertEquals(8, cache.getWeightedSize());
+        assertFalse(cache.containsKey(1));
+        cache.put(4, "dddddddddd");
+        assertEquals(1, cache.size());
+        assertEquals(10, cache.getWeightedSize());
+        assertEquals(4 + 2 + 6, cache.stats().evictionWeight());
+
+        // замена 5 вытесняет 4, дальше в пакете 4 должна вставиться заново, а не записаться в вытесненный узел
+        cache.put(4, "dddd");
+        cache.put(5, "ee");
+        cache.putAll(new Integer[]{5, 4}, new String[]{"eeeeeeee", "d"});
+        assertEquals("d", cache.getIfPresent(4));
+        assertEquals("eeeeeeee", cache.getIfPresent(5));
+        assertEquals(9, cache.getWeightedSize());
+        assertThrows(IllegalArgumentException.class,
+                () -> new BoundedCache<Integer, Integer>(10, (key, value) -> -1, EvictionPolicy.LRU).put(1, 1));
+    }
+
+    /**
+     * Замена значения в обходе пересчитывает вес так же, как put
+     */
+    @Test
+    public void testWeightAfterEntrySetValue() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, (key, value) -> value.length(),
+                EvictionPolicy.LRU);
+        cache.put(1, "aa");
+        cache.put(2, "bb");
+        cache.put(3, "cc");
+        for (var entry : cache.entrySet()) {
+            if (entry.getKey() == 2)
+                assertEquals("bb", entry.setValue("bbbb"));
+        }
+        assertEquals(8, cache.getWeightedSize());
+        assertEquals("bbbb", cache.getIfPresent(2));
+        var cursor = cache.cursor();
+        while (cursor.advance()) {
+            if (cursor.key() == 3) {
+                assertEquals("cc", cursor.setValue("cccccc"));
+                break;
+            }
+        }
+        // 2 + 4 + 6 > 10: вытесняется самый давний
+        assertEquals(10, cache.getWeightedSize());
+        assertFalse(cache.containsKey(1));
+        assertEquals(1, cache.stats().evictionCount());
+    }
+
+    /**
+     * Частые ключи переживают однократный проход по большому числу редких, LRU их теряет
+     */
+    @Test
+    public void testTinyLfuResistsScan() {
+        assertTrue(hotHitRate(EvictionPolicy.W_TINY_LFU) > 0.9);
+        assertTrue(hotHitRate(EvictionPolicy.LRU) < 0.1);
+    }
+
+    private double hotHitRate(EvictionPolicy policy) {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(100, policy);
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < 50; key++) {
+                if (cache.getIfPresent(key) == null)
+                    cache.put(key, key);
+            }
+        }
+        for (int key = 1000; key < 11000; key++) {
+            cache.put(key, key);
+            assertTrue(cache.size() <= 100);
+        }
+        int hits = 0;
+        for (int key = 0; key < 50; key++) {
+            if (cache.containsKey(key))
+                hits++;
+        }
+        return hits / 50.0;
+    }
+
+    @Test
+    public void testTinyLfuBounded() {
+        BoundedCache<Object, Integer> cache = new BoundedCache<>(500, EvictionPolicy.W_TINY_LFU);
+        for (int i = 0; i < 50000; i++) {
+            int id = (int) Math.abs(random.nextGaussian() * 1000);
+            Object key = id % 3 == 0 ? new ComparableCollidingKey(id) : id;
+            if (random.nextInt(5) == 0 && cache.containsKey(key)) {
+                cache.remove(key);
+            } else if (cache.getIfPresent(key) == null) {
+                cache.put(key, id);
+            }
+            assertTrue(cache.size() <= 500);
+            assertEquals(cache.size(), cache.getWeightedSize());
+        }
+        for (var entry : cache.entrySet()) {
+            assertEquals(entry.getValue(), cache.get(entry.getKey()));
+        }
+        cache.clear();
+        assertEquals(0, cache.getWeightedSize());
+        cache.put(1, 1);
+        assertEquals(1, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(10, EvictionPolicy.W_TINY_LFU);
+        assertEquals(1.0, cache.stats().hitRate());
+        cache.put(1, 1);
+        assertEquals(1, cache.getIfPresent(1));
+        assertNull(cache.getIfPresent(2));
+        assertThrows(NoSuchElementException.class, () -> cache.get(3));
+        var stats = cache.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(2, stats.missCount());
+        assertEquals(1.0 / 3, stats.hitRate(), 1e-9);
+        Integer[] out = new Integer[3];
+        assertEquals(1, cache.getAll(new Integer[]{1, 2, 3}, out));
+        assertArrayEquals(new Integer[]{1, null, null}, out);
+        assertEquals(2, cache.stats().hitCount());
+        assertEquals(4, cache.stats().missCount());
+        assertThrows(NotSerializableException.class,
+                () -> new ObjectOutputStream(new ByteArrayOutputStream()).writeObject(cache));
+    }
+}
@@ -0,0 +1,74 @@
+package map;
+
+import org.example.map.ConcurrentCounterMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentCounterMapTest {
+    private static final int THREADS = 8;
+
+    @Test
+    public void testSingleThread() {
+        ConcurrentCounterMap<String> counters = new ConcurrentCounterMap<>();
+        assertEquals(0, counters.sum("a"));
+        counters.increment("a");
+        counters.add("a", 10);
+        counters.decrement("b");
+        assertEquals(11, counters.sum("a"));
+        assertEquals(-1, counters.sum("b"));
+        assertEquals(10, counters.total());
+        assertEquals(11, counters.sumThenReset("a"));
+        assertEquals(0, counters.sum("a"));
+        assertEquals(2, counters.size());
+        assertEquals(-1, counters.remove("b"));
+        assertEquals(0, counters.remove("b"));
+        assertEquals(1, counters.size());
+        assertThrows(NullPointerException.class, () -> counters.increment(null));
+    }
+
+    /**
+     * Все потоки бьют в один горячий ключ и в общий набор из многих ключей, ни одно прибавление не теряется
+     */
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        ConcurrentCounterMap<Integer> counters = new ConcurrentCounterMap<>();
+        int perThread = 50000;
+        int keys = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        counters.increment(-1);
+                        counters.add(i % keys, 2);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals((long) THREADS * perThread, counters.sum(-1));
+        assertEquals(keys + 1, counters.size());
+        var snapshot = counters.snapshot();
+        assertEquals(keys + 1, snapshot.size());
+        for (int key = 0; key < keys; key++) {
+            assertEquals(2L * THREADS * perThread / keys, snapshot.get(key));
+        }
+        assertEquals(3L * THREADS * perThread, counters.total());
+        counters.clear();
+        assertEquals(0, counters.total());
+        assertEquals(3L * THREADS * perThread, snapshot.values().stream().mapToLong(Long::longValue).sum());
+    }
+}
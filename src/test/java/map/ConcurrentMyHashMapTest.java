@@ -0,0 +1,120 @@
+package map;
+
+import org.example.map.ConcurrentMyHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentMyHashMapTest extends AbstractMapTest {
+    private static final int THREADS = 8;
+
+    @Override
+    protected <K, V> Map<K, V> createMap() {
+        return new ConcurrentMyHashMap<>();
+    }
+
+    @Test
+    public void testNullsAndAbsentKeys() {
+        ConcurrentMyHashMap<Integer, Integer> concurrent = new ConcurrentMyHashMap<>();
+        assertNull(concurrent.get(1));
+        assertNull(concurrent.remove(1));
+        assertThrows(NullPointerException.class, () -> concurrent.put(null, 1));
+        assertThrows(NullPointerException.class, () -> concurrent.put(1, null));
+        assertNull(concurrent.putIfAbsent(1, 1));
+        assertEquals(1, concurrent.putIfAbsent(1, 2));
+        assertFalse(concurrent.replace(1, 2, 3));
+        assertTrue(concurrent.replace(1, 1, 3));
+        assertFalse(concurrent.remove(1, 1));
+        assertTrue(concurrent.remove(1, 3));
+        assertTrue(concurrent.isEmpty());
+    }
+
+    /**
+     * Потоки пишут непересекающиеся ключи, таблица за это время много раз растёт
+     */
+    @Test
+    public void testConcurrentPutsDuringResize() throws Exception {
+        ConcurrentMyHashMap<Integer, Integer> concurrent = new ConcurrentMyHashMap<>(1);
+        int perThread = 20000;
+        runConcurrently(thread -> {
+            for (int i = 0; i < perThread; i++) {
+                int key = thread * perThread + i;
+                assertNull(concurrent.put(key, key));
+                assertEquals(key, concurrent.get(key));
+            }
+        });
+        assertEquals(THREADS * perThread, concurrent.size());
+        for (int key = 0; key < THREADS * perThread; key++) {
+            assertEquals(key, concurrent.get(key));
+        }
+        var keys = new HashSet<>(concurrent.keySet());
+        assertEquals(THREADS * perThread, keys.size());
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < perThread; i += 2) {
+                int key = thread * perThread + i;
+                assertEquals(key, concurrent.remove(key));
+            }
+        });
+        assertEquals(THREADS * perThread / 2, concurrent.size());
+    }
+
+    /**
+     * computeIfAbsent и putIfAbsent на одних и тех же ключах: у каждого ключа ровно один победитель
+     */
+    @Test
+    public void testAtomicInsertion() throws Exception {
+        ConcurrentMyHashMap<Integer, Integer> concurrent = new ConcurrentMyHashMap<>();
+        AtomicInteger computations = new AtomicInteger();
+        int keys = 5000;
+        var winners = new ConcurrentLinkedQueue<Integer>();
+        runConcurrently(thread -> {
+            for (int key = 0; key < keys; key++) {
+                if (key % 2 == 0) {
+                    concurrent.computeIfAbsent(key, k -> {
+                        computations.incrementAndGet();
+                        return k;
+                    });
+                } else if (concurrent.putIfAbsent(key, thread) == null) {
+                    winners.add(key);
+                }
+            }
+        });
+        assertEquals(keys / 2, computations.get());
+        assertEquals(keys / 2, winners.size());
+        assertEquals(keys, concurrent.size());
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int id = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(id);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        void run(int thread);
+    }
+}
@@ -0,0 +1,180 @@
+package map;
+
+import org.example.map.ExpiringHashMap;
+import org.example.map.ExpiringHashMap.ExpiryPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpiringHashMapTest extends AbstractMapTest {
+    /**
+     * Точность колеса - одна корзина нижнего уровня
+     */
+    private static final long RESOLUTION = 1L << 30;
+
+    private final AtomicLong ticker = new AtomicLong(-TimeUnit.DAYS.toNanos(1));
+
+    @Override
+    protected <K, V> Map<K, V> createMap() {
+        return new ExpiringHashMap<>(Duration.ofDays(1));
+    }
+
+    private void advance(Duration duration) {
+        ticker.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    public void testExpireAfterWrite() {
+        ExpiringHashMap<String, Integer> expiring = new ExpiringHashMap<>(Duration.ofSeconds(10),
+                ExpiryPolicy.AFTER_WRITE, ticker::get);
+        expiring.put("a", 1);
+        expiring.put("b", 2, Duration.ofMinutes(5));
+        advance(Duration.ofSeconds(9));
+        assertEquals(1, expiring.get("a"));
+        assertEquals(Duration.ofSeconds(1), expiring.getTimeToLive("a"));
+        expiring.put("a", 11);
+        advance(Duration.ofSeconds(9));
+        assertEquals(11, expiring.get("a"));
+        advance(Duration.ofSeconds(2));
+        assertFalse(expiring.containsKey("a"));
+        assertThrows(NoSuchElementException.class, () -> expiring.get("a"));
+        assertThrows(NoSuchElementException.class, () -> expiring.remove("a"));
+        assertNull(expiring.put("a", 111));
+        assertEquals(2, expiring.size());
+        advance(Duration.ofMinutes(5));
+        assertEquals(0, expiring.size());
+        assertTrue(expiring.isEmpty());
+    }
+
+    @Test
+    public void testExpireAfterAccess() {
+        ExpiringHashMap<String, Integer> expiring = new ExpiringHashMap<>(Duration.ofSeconds(10),
+                ExpiryPolicy.AFTER_ACCESS, ticker::get);
+        expiring.put("a", 1);
+        expiring.put("b", 2);
+        for (int i = 0; i < 10; i++) {
+            advance(Duration.ofSeconds(5));
+            assertEquals(1, expiring.get("a"));
+        }
+        assertFalse(expiring.containsKey("b"));
+        advance(Duration.ofSeconds(12));
+        expiring.cleanUp();
+        assertEquals(0, expiring.size());
+    }
+
+    /**
+     * Сроки от секунд до недель, часть ключей с коллизиями (корзины-деревья). После каждого шага времени
+     * все пары старше шага колеса удалены, а все живые - на месте
+     */
+    @Test
+    public void testRandomExpiry() {
+        ExpiringHashMap<Object, Long> expiring = new ExpiringHashMap<>(Duration.ofHours(1),
+                ExpiryPolicy.AFTER_WRITE, ticker::get);
+        Map<Object, Long> deadlines = new HashMap<>();
+        long now = 0;
+        long[] ranges = {TimeUnit.SECONDS.toNanos(100), TimeUnit.HOURS.toNanos(3), TimeUnit.DAYS.toNanos(20)};
+        for (int step = 0; step < 400; step++) {
+            for (int i = 0; i < 50; i++) {
+                int id = random.nextInt(5000);
+                Object key = id % 4 == 0 ? new CollidingKey(id) : id;
+                long ttl = 1 + (long) (random.nextDouble() * ranges[random.nextInt(ranges.length)]);
+                expiring.put(key, now + ttl, Duration.ofNanos(ttl));
+                deadlines.put(key, now + ttl);
+            }
+            long delta = (long) (random.nextDouble() * TimeUnit.HOURS.toNanos(2));
+            advance(Duration.ofNanos(delta));
+            now += delta;
+            int expectedMin = 0, expectedMax = 0;
+            for (var entry : deadlines.entrySet()) {
+                long deadline = entry.getValue();
+                if (deadline > now)
+                    expectedMin++;
+                if (deadline > now - RESOLUTION)
+                    expectedMax++;
+            }
+            int size = expiring.size();
+            assertTrue(size >= expectedMin && size <= expectedMax, size + " " + expectedMin + " " + expectedMax);
+            for (var entry : expiring.entrySet()) {
+                assertEquals(deadlines.get(entry.getKey()), entry.getValue());
+            }
+            long finalNow = now;
+            deadlines.values().removeIf(deadline -> deadline <= finalNow);
+            for (var entry : deadlines.entrySet()) {
+                assertEquals(entry.getValue(), expiring.get(entry.getKey()));
+            }
+        }
+        advance(Duration.ofDays(30));
+        assertEquals(0, expiring.size());
+    }
+
+    @Test
+    public void testClearAndArguments() {
+        ExpiringHashMap<Integer, Integer> expiring = new ExpiringHashMap<>(Duration.ofSeconds(1),
+                ExpiryPolicy.AFTER_WRITE, ticker::get);
+        for (int i = 0; i < 100; i++) {
+            expiring.put(i, i, Duration.ofSeconds(i));
+        }
+        expiring.clear();
+        expiring.put(1, 1, ChronoUnit.FOREVER.getDuration());
+        advance(Duration.ofDays(1000));
+        assertEquals(1, expiring.get(1));
+        assertFalse(expiring.containsKey(0));
+        assertThrows(IllegalArgumentException.class, () -> expiring.put(2, 2, Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    public void testComputeMethods() {
+        ExpiringHashMap<String, Integer> expiring = new ExpiringHashMap<>(Duration.ofSeconds(10),
+                ExpiryPolicy.AFTER_WRITE, ticker::get);
+        assertEquals(1, expiring.merge("a", 1, Integer::sum));
+        advance(Duration.ofSeconds(5));
+        assertEquals(2, expiring.merge("a", 1, Integer::sum));
+        assertEquals(1, expiring.computeIfAbsent("b", key -> 1));
+        advance(Duration.ofSeconds(8));
+        assertEquals(2, expiring.getOrDefault("a", 0));
+        // computeIfAbsent нашёл пару - это чтение, срок не продлевается
+        assertEquals(1, expiring.computeIfAbsent("b", key -> 2));
+        advance(Duration.ofSeconds(4));
+        assertEquals(0, expiring.getOrDefault("b", 0));
+        assertEquals(1, expiring.merge("b", 1, Integer::sum));
+        assertEquals(Duration.ofSeconds(10), expiring.getTimeToLive("b"));
+        advance(Duration.ofSeconds(11));
+        assertEquals(5, expiring.compute("a", (key, value) -> value == null ? 5 : value + 1));
+        assertEquals(1, expiring.size());
+    }
+
+    @Test
+    public void testEntryWrites() {
+        ExpiringHashMap<String, Integer> expiring = new ExpiringHashMap<>(Duration.ofSeconds(10),
+                ExpiryPolicy.AFTER_WRITE, ticker::get);
+        expiring.put("a", 1);
+        expiring.put("b", 2);
+        expiring.put("c", 3);
+        advance(Duration.ofSeconds(9));
+        for (var entry : expiring.entrySet()) {
+            if (entry.getKey().equals("a"))
+                assertEquals(1, entry.setValue(11));
+        }
+        var cursor = expiring.cursor();
+        while (cursor.advance()) {
+            if (cursor.key().equals("b"))
+                assertEquals(2, cursor.setValue(22));
+        }
+        advance(Duration.ofSeconds(3));
+        assertEquals(Map.of("a", 11, "b", 22), expiring);
+        assertEquals(Duration.ofSeconds(7), expiring.getTimeToLive("a"));
+        expiring.replaceAll((key, value) -> value + 1);
+        advance(Duration.ofSeconds(9));
+        assertEquals(Map.of("a", 12, "b", 23), expiring);
+        advance(Duration.ofSeconds(2));
+        assertTrue(expiring.isEmpty());
+    }
+}
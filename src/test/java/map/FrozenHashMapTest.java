@@ -0,0 +1,81 @@
+package map;
+
+import map.AbstractMapTest.CollidingKey;
+import org.example.map.FrozenHashMap;
+import org.example.map.MyHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrozenHashMapTest {
+    private final Random random = new Random();
+
+    @Test
+    public void testLookups() {
+        for (int size : new int[]{0, 1, 2, 5, 100, 50000}) {
+            MyHashMap<Object, Integer> source = new MyHashMap<>();
+            for (int i = 0; i < size; i++) {
+                int id = random.nextInt();
+                source.put(id % 7 == 0 ? new CollidingKey(id % 20) : id, i);
+            }
+            if (size > 0)
+                source.put(null, -1);
+            var frozen = source.freeze();
+            assertEquals(source.size(), frozen.size());
+            assertEquals(new HashMap<>(source), new HashMap<>(frozen));
+            for (var entry : source.entrySet()) {
+                assertSame(entry.getValue(), frozen.get(entry.getKey()));
+                assertTrue(frozen.containsKey(entry.getKey()));
+                assertTrue(frozen.entrySet().contains(entry));
+            }
+            for (int i = 0; i < 1000; i++) {
+                int id = random.nextInt();
+                if (!source.containsKey(id)) {
+                    assertFalse(frozen.containsKey(id));
+                    assertEquals(-2, frozen.getOrDefault(id, -2));
+                }
+            }
+            assertFalse(frozen.containsKey(new CollidingKey(1000)));
+            assertThrows(NoSuchElementException.class, () -> frozen.get(new CollidingKey(1000)));
+        }
+    }
+
+    @Test
+    public void testImmutable() {
+        var frozen = FrozenHashMap.copyOf(Map.of(1, 1, 2, 2));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.put(3, 3));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.remove(1));
+        assertThrows(UnsupportedOperationException.class, frozen::clear);
+        assertThrows(UnsupportedOperationException.class, () -> frozen.entrySet().iterator().next().setValue(0));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.keySet().removeIf(key -> true));
+        assertSame(frozen, FrozenHashMap.copyOf(frozen));
+        Integer value = 1000;
+        assertTrue(FrozenHashMap.copyOf(Map.of(1, value)).containsValue(value));
+        assertFalse(FrozenHashMap.copyOf(Map.of(1, value)).containsValue(new Integer(1000)));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        Map<String, Integer> source = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            source.put("key" + i, i);
+        }
+        source.put("Aa", -1);
+        source.put("BB", -2);
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(FrozenHashMap.copyOf(source));
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            var copy = (FrozenHashMap<String, Integer>) in.readObject();
+            assertEquals(source, copy);
+            assertEquals(-2, copy.get("BB"));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package map;
+
+import org.example.map.IntIntHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntIntHashMapTest {
+
+    @Test
+    public void testCRUDMethods() {
+        IntIntHashMap map = new IntIntHashMap();
+        assertEquals(0, map.put(1, 10));
+        assertEquals(10, map.put(1, 11));
+        assertEquals(11, map.get(1));
+        assertEquals(0, map.get(2));
+        assertEquals(-1, map.getOrDefault(2, -1));
+        assertNull(map.get((Object) 2));
+        assertEquals(11, map.remove(1));
+        assertNull(map.remove((Object) 1));
+        assertTrue(map.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new IntIntHashMap(Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> new IntIntHashMap(900_000_000, 0.75f));
+    }
+
+    @Test
+    public void testAddTo() {
+        IntIntHashMap counters = new IntIntHashMap();
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(500) - 250;
+            int increment = random.nextInt(10);
+            assertEquals((int) expected.merge(key, increment, Integer::sum), counters.addTo(key, increment));
+        }
+        assertEquals(expected, counters);
+        assertEquals(expected.getOrDefault(0, 0), counters.get(0));
+    }
+
+    @Test
+    public void testRandomOperations() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(2000) - 1000;
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, i), map.put((Integer) key, (Integer) i));
+                case 1 -> assertEquals(expected.remove(key), map.remove((Object) key));
+                default -> assertEquals(expected.getOrDefault(key, 0), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        var clone = map.clone();
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(expected, clone);
+    }
+}
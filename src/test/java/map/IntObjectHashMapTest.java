@@ -0,0 +1,66 @@
+package map;
+
+import org.example.map.IntObjectHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntObjectHashMapTest {
+
+    @Test
+    public void testCRUDMethods() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        assertNull(map.put(1, "one"));
+        assertEquals("one", map.put(1, "uno"));
+        assertEquals("uno", map.get(1));
+        assertNull(map.get(2));
+        assertEquals("default", map.getOrDefault(2, "default"));
+        assertEquals("uno", map.remove(1));
+        assertNull(map.remove(1));
+        assertTrue(map.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new IntObjectHashMap<>(Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> new IntObjectHashMap<>(900_000_000, 0.75f));
+    }
+
+    @Test
+    public void testZeroKey() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        assertFalse(map.containsKey(0));
+        assertNull(map.put(0, "zero"));
+        assertTrue(map.containsKey(0));
+        assertEquals("zero", map.get(0));
+        assertEquals(1, map.size());
+        assertEquals(1, map.entrySet().size());
+        assertEquals("zero", map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>(4);
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(2000) - 1000;
+            Integer value = i;
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, value), map.put(key, value));
+                case 1 -> assertEquals(expected.remove(key), map.remove(key));
+                default -> assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        var clone = map.clone();
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(expected, clone);
+    }
+}
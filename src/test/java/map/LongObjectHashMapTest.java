@@ -0,0 +1,66 @@
+package map;
+
+import org.example.map.LongObjectHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongObjectHashMapTest {
+
+    @Test
+    public void testCRUDMethods() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertNull(map.put(1L, "one"));
+        assertEquals("one", map.put(1L, "uno"));
+        assertEquals("uno", map.get(1L));
+        assertNull(map.get(2L));
+        assertEquals("default", map.getOrDefault(2L, "default"));
+        assertEquals("uno", map.remove(1L));
+        assertNull(map.remove(1L));
+        assertTrue(map.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new LongObjectHashMap<>(Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> new LongObjectHashMap<>(900_000_000, 0.75f));
+    }
+
+    @Test
+    public void testZeroKey() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertFalse(map.containsKey(0L));
+        assertNull(map.put(0L, "zero"));
+        assertTrue(map.containsKey(0L));
+        assertEquals("zero", map.get(0L));
+        assertEquals(1, map.size());
+        assertEquals(1, map.entrySet().size());
+        assertEquals("zero", map.remove(0L));
+        assertFalse(map.containsKey(0L));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        LongObjectHashMap<Integer> map = new LongObjectHashMap<>(4);
+        HashMap<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            long key = (random.nextInt(2000) - 1000) * 0x1_0000_0001L;
+            Integer value = i;
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, value), map.put(key, value));
+                case 1 -> assertEquals(expected.remove(key), map.remove(key));
+                default -> assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        var clone = map.clone();
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(expected, clone);
+    }
+}
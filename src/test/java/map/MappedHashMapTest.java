@@ -0,0 +1,140 @@
+package map;
+
+import org.example.map.Codec;
+import org.example.map.MappedHashMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedHashMapTest {
+    @TempDir
+    Path directory;
+    private final Random random = new Random(5);
+
+    @Test
+    public void testCRUDMethods() throws IOException {
+        try (MappedHashMap<String, String> map = new MappedHashMap<>(directory.resolve("crud.map"), Codec.STRING, Codec.STRING)) {
+            assertNull(map.put("ключ", "значение"));
+            assertEquals("значение", map.put("ключ", "другое"));
+            assertEquals("другое", map.get("ключ"));
+            assertNull(map.get("нет"));
+            assertTrue(map.containsKey("ключ"));
+            assertEquals("другое", map.remove("ключ"));
+            assertNull(map.remove("ключ"));
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    /**
+     * Маленькие окна: записи и индекс раскладываются по многим окнам, индекс несколько раз перестраивается
+     */
+    @Test
+    public void testReopen() throws IOException {
+        var file = directory.resolve("reopen.map");
+        Map<Integer, String> expected = new HashMap<>();
+        try (MappedHashMap<Integer, String> map = new MappedHashMap<>(file, Codec.INTEGER, Codec.STRING, 0, 4096)) {
+            for (int i = 0; i < 50000; i++) {
+                int key = random.nextInt(5000);
+                if (random.nextInt(4) == 0) {
+                    assertEquals(expected.remove(key), map.remove(key));
+                } else {
+                    var value = "value-" + i + "-" + "x".repeat(random.nextInt(50));
+                    assertEquals(expected.put(key, value), map.put(key, value));
+                }
+            }
+            assertEquals(expected, map);
+        }
+        try (MappedHashMap<Integer, String> map = new MappedHashMap<>(file, Codec.INTEGER, Codec.STRING)) {
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected, map);
+            var iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                var entry = iterator.next();
+                if (entry.getKey() % 2 == 0) {
+                    iterator.remove();
+                    expected.remove(entry.getKey());
+                } else {
+                    entry.setValue("updated");
+                    expected.put(entry.getKey(), "updated");
+                }
+            }
+            assertEquals(expected, map);
+        }
+        try (MappedHashMap<Integer, String> map = new MappedHashMap<>(file, Codec.INTEGER, Codec.STRING)) {
+            assertEquals(expected, map);
+            assertEquals(0, map.getFileSize() % 4096);
+        }
+    }
+
+    /**
+     * Падение перед публикацией нового индекса: в копии файла заголовок возвращается к старому индексу,
+     * всё остальное, что успел дописать рост, остаётся. Старый индекс должен описывать все пары
+     */
+    @Test
+    public void testCrashDuringRehash() throws IOException {
+        var file = directory.resolve("grow.map");
+        var crashed = directory.resolve("crashed.map");
+        Map<Integer, String> expected = new HashMap<>();
+        int rehashes = 0;
+        try (MappedHashMap<Integer, String> map = new MappedHashMap<>(file, Codec.INTEGER, Codec.STRING, 0, 4096)) {
+            for (int i = 0; i < 2000; i++) {
+                long index = readIndexOffset(file);
+                var value = "value-" + i;
+                map.put(i % 1500, value);
+                expected.put(i % 1500, value);
+                if (readIndexOffset(file) == index)
+                    continue;
+                rehashes++;
+                Files.copy(file, crashed, StandardCopyOption.REPLACE_EXISTING);
+                writeIndexOffset(crashed, index);
+                try (MappedHashMap<Integer, String> recovered = new MappedHashMap<>(crashed, Codec.INTEGER, Codec.STRING)) {
+                    assertEquals(expected, recovered);
+                }
+            }
+            assertEquals(expected, map);
+        }
+        assertTrue(rehashes >= 5);
+    }
+
+    /**
+     * Смещение индекса - long по смещению 16 в заголовке
+     */
+    private static long readIndexOffset(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(Long.BYTES);
+            channel.read(buffer, 16);
+            return buffer.getLong(0);
+        }
+    }
+
+    private static void writeIndexOffset(Path file, long index) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, index), 16);
+        }
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        var file = directory.resolve("garbage.map");
+        Files.write(file, new byte[100]);
+        assertThrows(IOException.class, () -> new MappedHashMap<>(file, Codec.INTEGER, Codec.INTEGER));
+
+        var closed = new MappedHashMap<>(directory.resolve("closed.map"), Codec.INTEGER, Codec.INTEGER);
+        closed.put(1, 1);
+        closed.close();
+        closed.close();
+        assertThrows(IllegalStateException.class, () -> closed.get(1));
+    }
+}
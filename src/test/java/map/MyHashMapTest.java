@@ -1,26 +1,47 @@
 package map;
 
-import entity.TestEntity;
+import org.example.map.HashSpreading;
 import org.example.map.MyHashMap;
-import org.junit.jupiter.api.BeforeEach;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.*;
 import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-public class MyHashMapTest {
-    MyHashMap<Integer, TestEntity> map = new MyHashMap<>();
-    Random random = new Random();
+public class MyHashMapTest extends AbstractMapTest {
 
-    @BeforeEach
-    public void setUp() {
-        for (int i = 0; i < 1000; i++) {
-            map.put(random.nextInt(1000), TestEntity.build());
+    @Override
+    protected <K, V> Map<K, V> createMap() {
+        return new MyHashMap<>();
+    }
+
+    /**
+     * Общий набор на карте с инкрементальным resize: случайные операции и представления
+     * попадают на незаконченный перенос из oldTable
+     */
+    @Nested
+    public class IncrementalResizeMapTest extends AbstractMapTest {
+
+        @Override
+        protected <K, V> Map<K, V> createMap() {
+            return new MyHashMap<>(16, 0.75f, true);
         }
     }
 
@@ -36,53 +57,651 @@ public class MyHashMapTest {
             Field field = mapOne.getClass().getDeclaredField("table");
             field.setAccessible(true);
             var data = (Object[]) field.get(mapOne);
-            assertEquals(10, data.length);
+            assertEquals(16, data.length);
         } catch (NoSuchFieldException | IllegalAccessException e) {
             e.printStackTrace();
         }
+        assertThrows(IllegalArgumentException.class, () -> new MyHashMap<>(-1, 0.75f));
+        assertThrows(IllegalArgumentException.class, () -> new MyHashMap<>(16, 0f));
+    }
+
+    /**
+     * Ключи, различающиеся только старшими битами, без перемешивания попадают в одну корзину
+     */
+    @Test
+    public void testHashSpreading() throws NoSuchFieldException, IllegalAccessException {
+        for (HashSpreading spreading : HashSpreading.values()) {
+            MyHashMap<Integer, Integer> map = new MyHashMap<>(64, 0.75f, false, spreading);
+            for (int i = 0; i < 32; i++) {
+                map.put(i << 16, i);
+            }
+            for (int i = 0; i < 32; i++) {
+                assertEquals(i, map.get(i << 16));
+            }
+            Field field = map.getClass().getDeclaredField("table");
+            field.setAccessible(true);
+            var table = (Object[]) field.get(map);
+            int usedBuckets = 0;
+            for (Object bucket : table) {
+                if (bucket != null)
+                    usedBuckets++;
+            }
+            if (spreading == HashSpreading.NONE) {
+                assertEquals(1, usedBuckets);
+            } else {
+                assertTrue(usedBuckets >= 16, spreading + ": " + usedBuckets);
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalResize() {
+        MyHashMap<Integer, Integer> incremental = new MyHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < 10000; i++) {
+            incremental.put(i, i * 2);
+            assertEquals(i * 2, incremental.get(i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(incremental.containsKey(i));
+            assertEquals(i * 2, incremental.get(i));
+        }
+        assertTrue(incremental.containsValue(incremental.get(9999)));
+        assertFalse(incremental.containsKey(10000));
+    }
+
+    @Test
+    public void testTreeifyBucket() throws NoSuchFieldException, IllegalAccessException {
+        MyHashMap<Integer, Integer> collisions = new MyHashMap<>(1024, 0.75f);
+        for (int i = 0; i < 20; i++) {
+            collisions.put(i * 1024, i);
+        }
+        collisions.put(1, 1);
+        Field field = collisions.getClass().getDeclaredField("table");
+        field.setAccessible(true);
+        var table = (Object[]) field.get(collisions);
+        assertInstanceOf(MyHashMap.BinaryTreeNode.class, table[0]);
+        assertFalse(table[1] instanceof MyHashMap.BinaryTreeNode);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, collisions.get(i * 1024));
+        }
+
+        for (int i = 0; i < 15; i++) {
+            assertEquals(i, collisions.remove(i * 1024));
+        }
+        assertEquals(6, collisions.size());
+        assertFalse(table[0] instanceof MyHashMap.BinaryTreeNode);
+        for (int i = 15; i < 20; i++) {
+            assertEquals(i, collisions.get(i * 1024));
+        }
+    }
+
+    /**
+     * Чтение во время незаконченного инкрементального переноса и с корзиной-деревом
+     */
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException, NoSuchFieldException, IllegalAccessException {
+        MyHashMap<String, String> original = new MyHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < 1000; i++) {
+            original.put("key" + i, "value" + i);
+        }
+        // "Aa" и "BB" дают одинаковый hashCode, любые их склейки одной длины - тоже
+        for (int mask = 0; mask < 20; mask++) {
+            var key = new StringBuilder();
+            for (int bit = 0; bit < 5; bit++) {
+                key.append((mask >> bit & 1) == 0 ? "Aa" : "BB");
+            }
+            original.put(key.toString(), "collision" + mask);
+        }
+        original.put(null, "null key");
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(original);
+        }
+        MyHashMap<String, String> copy;
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (MyHashMap<String, String>) in.readObject();
+        }
+        assertEquals(original.size(), copy.size());
+        assertEquals(new java.util.HashMap<>(original), new java.util.HashMap<>(copy));
+        assertEquals(0.75f, copy.getLoadFactor(), 0.0);
+        assertEquals("null key", copy.get(null));
+
+        Field field = MyHashMap.class.getDeclaredField("table");
+        field.setAccessible(true);
+        var table = (Object[]) field.get(copy);
+        assertEquals(0, Integer.bitCount(table.length) - 1);
+        assertTrue(table.length * 0.75f >= copy.size());
+        assertTrue(java.util.Arrays.stream(table).anyMatch(bucket -> bucket instanceof MyHashMap.BinaryTreeNode));
+
+        for (int i = 1000; i < 3000; i++) {
+            copy.put("key" + i, "value" + i);
+        }
+        assertEquals("value2999", copy.get("key2999"));
+        assertEquals("collision0", copy.remove("AaAaAaAaAa"));
+    }
+
+    @Test
+    public void testSerializedCapacityHint() throws IOException, ClassNotFoundException, NoSuchFieldException, IllegalAccessException {
+        MyHashMap<Integer, Integer> original = new MyHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            original.put(i, i);
+        }
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(original);
+        }
+        // длина таблицы и размер пишутся подряд: длину заменяем на Integer.MAX_VALUE
+        var data = bytes.toByteArray();
+        byte[] hint = {0, 0, 0, 16, 0, 0, 0, 3};
+        int offset = 0;
+        while (!java.util.Arrays.equals(data, offset, offset + hint.length, hint, 0, hint.length)) {
+            offset++;
+        }
+        data[offset] = 0x7f;
+        data[offset + 1] = data[offset + 2] = data[offset + 3] = (byte) 0xff;
+        MyHashMap<Integer, Integer> copy;
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            copy = (MyHashMap<Integer, Integer>) in.readObject();
+        }
+        assertEquals(new HashMap<>(original), new HashMap<>(copy));
+        Field field = MyHashMap.class.getDeclaredField("table");
+        field.setAccessible(true);
+        assertTrue(((Object[]) field.get(copy)).length <= 64);
+    }
+
+    @Test
+    public void testPutAllPresizes() throws NoSuchFieldException, IllegalAccessException {
+        Map<Integer, Integer> source = new java.util.HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            source.put(i, -i);
+        }
+        MyHashMap<Integer, Integer> map = new MyHashMap<>(16, 0.75f, true);
+        map.put(-1, 1);
+        map.putAll(source);
+        Field field = MyHashMap.class.getDeclaredField("table");
+        field.setAccessible(true);
+        assertEquals(16384, ((Object[]) field.get(map)).length);
+        assertEquals(10001, map.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(-i, map.get(i));
+        }
+    }
+
+    @Test
+    public void testBuilder() {
+        Map<String, Integer> source = new java.util.HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            source.put("key" + i, i);
+        }
+        // одинаковый hashCode: корзина станет деревом
+        for (int mask = 0; mask < 32; mask++) {
+            var key = new StringBuilder();
+            for (int bit = 0; bit < 5; bit++) {
+                key.append((mask >> bit & 1) == 0 ? "Aa" : "BB");
+            }
+            source.put(key.toString(), -mask);
+        }
+        for (boolean parallel : new boolean[]{false, true}) {
+            MyHashMap<String, Integer> map = MyHashMap.<String, Integer>builder()
+                    .from(source)
+                    .parallel(parallel)
+                    .hashSpreading(HashSpreading.MURMUR3)
+                    .build();
+            assertEquals(source.size(), map.size());
+            assertEquals(source, new java.util.HashMap<>(map));
+            map.putAll(source);
+            assertEquals(source.size(), map.size());
+            assertEquals(-31, map.remove("BBBBBBBBBB"));
+            assertEquals(source.size() - 1, map.size());
+        }
+        assertTrue(MyHashMap.builder().expectedSize(100).build().isEmpty());
+    }
+
+    @Test
+    public void testComputeMethods() {
+        MyHashMap<String, Integer> counts = new MyHashMap<>();
+        for (String word : "a b a c b a".split(" ")) {
+            counts.merge(word, 1, Integer::sum);
+        }
+        assertEquals(3, counts.get("a"));
+        assertEquals(0, counts.getOrDefault("d", 0));
+        assertEquals(1, counts.computeIfAbsent("c", key -> 100));
+        assertEquals(4, counts.computeIfAbsent("d", String::length) + 3);
+        assertNull(counts.computeIfPresent("e", (key, value) -> 1));
+        assertEquals(30, counts.computeIfPresent("a", (key, value) -> value * 10));
+        assertNull(counts.compute("b", (key, value) -> null));
+        assertFalse(counts.containsKey("b"));
+        assertNull(counts.merge("c", 1, (oldValue, value) -> null));
+        assertEquals(2, counts.size());
+        assertNull(counts.putIfAbsent("b", 2));
+        assertEquals(2, counts.putIfAbsent("b", 3));
+        counts.put("n", null);
+        assertNull(counts.getOrDefault("n", 5));
+        assertEquals(7, counts.merge("n", 7, Integer::sum));
+        assertThrows(ConcurrentModificationException.class,
+                () -> counts.computeIfAbsent("x", key -> counts.put("y", 1)));
+    }
+
+    /**
+     * compute-методы против HashMap, половина ключей с одинаковым hash (корзины-деревья), инкрементальный resize
+     */
+    @Test
+    public void testRandomComputeOperations() {
+        MyHashMap<Object, Integer> actual = new MyHashMap<>(16, 0.75f, true);
+        Map<Object, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            int id = random.nextInt(3000);
+            Object key = id % 2 == 0 ? new CollidingKey(id % 200) : id;
+            int value = random.nextInt(10);
+            switch (random.nextInt(5)) {
+                case 0 -> assertEquals(expected.merge(key, value, (a, b) -> a + b > 20 ? null : a + b),
+                        actual.merge(key, value, (a, b) -> a + b > 20 ? null : a + b));
+                case 1 -> assertEquals(expected.computeIfAbsent(key, k -> value),
+                        actual.computeIfAbsent(key, k -> value));
+                case 2 -> assertEquals(expected.computeIfPresent(key, (k, v) -> v == value ? null : v + 1),
+                        actual.computeIfPresent(key, (k, v) -> v == value ? null : v + 1));
+                case 3 -> assertEquals(expected.compute(key, (k, v) -> v == null ? Integer.valueOf(value) : v % 3 == 0 ? null : v - 1),
+                        actual.compute(key, (k, v) -> v == null ? Integer.valueOf(value) : v % 3 == 0 ? null : v - 1));
+                default -> assertEquals(expected.getOrDefault(key, -1), actual.getOrDefault(key, -1));
+            }
+            assertEquals(expected.size(), actual.size());
+        }
+        assertEquals(expected, new HashMap<>(actual));
+    }
+
+    /**
+     * Размеры подобраны так, что часть проверок попадает на незаконченный инкрементальный resize
+     */
+    @Test
+    public void testBulkOperations() {
+        MyHashMap<Object, Long> bulk = new MyHashMap<>(16, 0.75f, true);
+        long expectedSum = 0;
+        for (int i = 0; i < 200000; i++) {
+            Object key = i % 50 == 0 ? new CollidingKey(i) : i;
+            bulk.put(key, (long) i);
+            expectedSum += i;
+            if (Integer.bitCount(i + 1) != 1 && i != 199999)
+                continue;
+            long target = i / 2;
+            for (long threshold : new long[]{1, 1000, Long.MAX_VALUE}) {
+                Map<Object, Long> visited = new ConcurrentHashMap<>();
+                bulk.forEach(threshold, (k, v) -> assertNull(visited.put(k, v)));
+                assertEquals(bulk.size(), visited.size());
+                assertEquals(expectedSum, bulk.reduceValues(threshold, Long::sum));
+                assertEquals((long) bulk.size(), bulk.reduce(threshold, (k, v) -> 1L, Long::sum));
+                assertEquals(Long.valueOf(target), bulk.<Long>search(threshold, (k, v) -> v == target ? v : null));
+                assertNull(bulk.search(threshold, (k, v) -> v < 0 ? v : null));
+            }
+        }
+        var value = bulk.get(12345);
+        assertTrue(bulk.containsValue(value));
+        // containsValue сравнивает по ссылке
+        assertFalse(bulk.containsValue(Long.valueOf(12345L)));
+        assertNull(new MyHashMap<Integer, Integer>().reduceValues(1, Integer::sum));
+    }
+
+    @Test
+    public void testSpliterators() {
+        MyHashMap<Object, Integer> source = new MyHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < 100000; i++) {
+            source.put(i % 100 == 0 ? new CollidingKey(i) : i, i);
+        }
+        var spliterator = source.keySet().spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.DISTINCT));
+        assertEquals(100000, spliterator.getExactSizeIfKnown());
+        var prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+        Set<Object> keys = new HashSet<>();
+        prefix.forEachRemaining(keys::add);
+        while (spliterator.tryAdvance(keys::add)) {
+        }
+        assertEquals(100000, keys.size());
+
+        assertEquals(100000, source.keySet().parallelStream().distinct().count());
+        assertEquals(99999L * 100000 / 2, source.values().parallelStream().mapToLong(Integer::longValue).sum());
+        assertTrue(source.entrySet().parallelStream()
+                .allMatch(entry -> source.get(entry.getKey()).equals(entry.getValue())));
+        assertEquals(0, new MyHashMap<>().entrySet().parallelStream().count());
+    }
+
+    /**
+     * Копия повторяет таблицу корзина в корзину (тип корзины и первый узел), незаконченный перенос тоже
+     */
+    @Test
+    public void testClone() throws NoSuchFieldException, IllegalAccessException {
+        MyHashMap<Object, Integer> source = new MyHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < 5000; i++) {
+            source.put(i % 10 == 0 ? new CollidingKey(i % 300) : i, i);
+        }
+        var clone = source.clone();
+        Field tableField = MyHashMap.class.getDeclaredField("table");
+        tableField.setAccessible(true);
+        var sourceTable = (Object[]) tableField.get(source);
+        var cloneTable = (Object[]) tableField.get(clone);
+        assertNotSame(sourceTable, cloneTable);
+        assertEquals(sourceTable.length, cloneTable.length);
+        for (int i = 0; i < sourceTable.length; i++) {
+            assertEquals(sourceTable[i] == null ? null : sourceTable[i].getClass(),
+                    cloneTable[i] == null ? null : cloneTable[i].getClass());
+            if (sourceTable[i] != null)
+                assertEquals(((Map.Entry<?, ?>) sourceTable[i]).getKey(), ((Map.Entry<?, ?>) cloneTable[i]).getKey());
+        }
+        assertEquals(new HashMap<>(source), new HashMap<>(clone));
+        clone.put(-1, -1);
+        clone.remove(new CollidingKey(0));
+        assertFalse(source.containsKey(-1));
+        assertTrue(source.containsKey(new CollidingKey(0)));
+        for (int i = 5000; i < 10000; i++) {
+            clone.put(i, i);
+        }
+        for (int i = 0; i < 300; i++) {
+            assertEquals(i % 10 == 0 ? null : i, source.getOrDefault(i, null));
+        }
+        assertEquals(4500 + 30, source.size());
+        assertEquals(source.size() + 5000, clone.size());
+    }
+
+    @Test
+    public void testCopyOnWriteClone() throws NoSuchFieldException, IllegalAccessException {
+        MyHashMap<Object, Integer> source = new MyHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < 5000; i++) {
+            source.put(i % 10 == 0 ? new CollidingKey(i % 300) : i, i);
+        }
+        Map<Object, Integer> expected = new HashMap<>(source);
+        var snapshot = source.copyOnWriteClone();
+        Field tableField = MyHashMap.class.getDeclaredField("table");
+        tableField.setAccessible(true);
+        assertSame(tableField.get(source), tableField.get(snapshot));
+
+        source.put(-1, -1);
+        assertNotSame(tableField.get(source), tableField.get(snapshot));
+        for (var entry : source.entrySet()) {
+            entry.setValue(entry.getValue() + 1);
+        }
+        var iterator = source.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() instanceof CollidingKey)
+                iterator.remove();
+        }
+        assertEquals(expected, new HashMap<>(snapshot));
+        assertEquals(expected.size() - 30 + 1, source.size());
+        assertEquals(2, source.get(1));
+
+        var second = snapshot.copyOnWriteClone();
+        for (var entry : second.entrySet()) {
+            entry.setValue(0);
+        }
+        assertEquals(expected, new HashMap<>(snapshot));
+        assertEquals(0, second.get(1));
+        snapshot.clear();
+        assertEquals(expected.size(), second.size());
     }
 
     @Test
-    public void testCRUDMethods() {
-        var keys = map.keySet();
-        var values = map.values();
-        var entrySet = map.entrySet();
-        assertEquals(entrySet.size(), keys.size());
-        for (Integer key :
-                keys) {
-            assertTrue(values.contains(map.get(key)));
+    public void testStatistics() {
+        MyHashMap<Object, Integer> map = new MyHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        var disabled = map.getStatistics();
+        assertEquals(0, disabled.resizeCount());
+        assertEquals(0, disabled.lookupCount());
+        assertEquals(256, sum(disabled.bucketLengthHistogram()));
+
+        map.setStatisticsEnabled(true);
+        for (int i = 100; i < 1000; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < 20; i++) {
+            map.put(new CollidingKey(i), i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(i));
         }
-        var testEntity = new TestEntity(18, TestEntity.Sex.M);
-        map.put(100000, testEntity);
-        assertEquals(testEntity, map.get(100000));
-        map.remove(100000);
-        assertFalse(map.containsKey(100000));
-        Map<Integer, TestEntity> map1 = new HashMap<>();
-        for (int i = 0; i < random.nextInt(100); i++) {
-            map.put(random.nextInt(100), TestEntity.build());
+        assertFalse(map.containsKey(-1));
+        for (int i = 0; i < 20; i++) {
+            map.remove(new CollidingKey(i));
         }
-        map.putAll(map1);
-        keys = map1.keySet();
-        for (Integer key :
-                keys) {
-            assertEquals(map.get(key), map1.get(key));
+        var stats = map.getStatistics();
+        assertEquals(3, stats.resizeCount());
+        assertTrue(stats.resizeNanos() > 0);
+        assertEquals(1, stats.treeifyCount());
+        assertEquals(1, stats.untreeifyCount());
+        assertEquals(1001, stats.lookupCount());
+        assertTrue(stats.averageProbeLength() >= 1 && stats.averageProbeLength() < 2, stats.toString());
+        assertEquals(2048, sum(stats.bucketLengthHistogram()));
+        assertTrue(stats.maxBucketLength() < 8);
+
+        var clone = map.clone();
+        assertTrue(clone.isStatisticsEnabled());
+        assertEquals(0, clone.getStatistics().lookupCount());
+        map.setStatisticsEnabled(false);
+        map.get(1);
+        assertEquals(0, map.getStatistics().lookupCount());
+        assertTrue(MyHashMap.builder().statisticsEnabled(true).from(Map.of(1, 1)).build().isStatisticsEnabled());
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
         }
+        return sum;
+    }
 
+    @Test
+    public void testFlightRecorderEvents(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("map.jfr");
+        try (var recording = new Recording()) {
+            recording.enable("org.example.map.MyHashMapResize");
+            recording.enable("org.example.map.MyHashMapBucketTransition");
+            recording.enable("org.example.map.MyHashMapStatistics");
+            recording.start();
+            MyHashMap<Object, Integer> map = new MyHashMap<>();
+            for (int i = 0; i < 100; i++) {
+                map.put(new CollidingKey(i % 10), i);
+            }
+            for (int i = 0; i < 5; i++) {
+                map.remove(new CollidingKey(i));
+            }
+            map.getStatistics();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        var transitions = events.stream()
+                .filter(event -> event.getEventType().getName().equals("org.example.map.MyHashMapBucketTransition"))
+                .toList();
+        assertEquals(2, transitions.size());
+        assertTrue(transitions.get(0).getBoolean("treeify"));
+        assertEquals(8, transitions.get(0).getInt("length"));
+        assertFalse(transitions.get(1).getBoolean("treeify"));
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("org.example.map.MyHashMapStatistics")
+                && event.getInt("size") == 5));
+    }
+
+    /**
+     * 2^12 строк из блоков "Aa"/"BB" с одинаковым String.hashCode: без ключа все в одной корзине
+     */
+    @Test
+    public void testKeyedHashing() throws IOException, ClassNotFoundException {
+        List<String> keys = new ArrayList<>(List.of(""));
+        for (int i = 0; i < 12; i++) {
+            List<String> next = new ArrayList<>();
+            for (String key : keys) {
+                next.add(key + "Aa");
+                next.add(key + "BB");
+            }
+            keys = next;
+        }
+        MyHashMap<Object, Integer> plain = new MyHashMap<>();
+        MyHashMap<Object, Integer> keyed = MyHashMap.<Object, Integer>builder().hashSpreading(HashSpreading.KEYED).build();
+        for (int i = 0; i < keys.size(); i++) {
+            plain.put(keys.get(i), i);
+            keyed.put(keys.get(i), i);
+            keyed.put((long) i << 32, i);
+            keyed.put(new CollidingKey(i % 10), i);
+        }
+        assertEquals(keys.size(), plain.getStatistics().maxBucketLength());
+        // 10 CollidingKey делят корзину и с ключом - их hashCode равны
+        assertTrue(keyed.getStatistics().maxBucketLength() < 24);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i, keyed.get(keys.get(i)));
+            assertEquals(i, keyed.get((long) i << 32));
+        }
+
+        var clone = keyed.clone();
+        assertEquals(new HashMap<>(keyed), new HashMap<>(clone));
+        keyed.keySet().removeIf(key -> key instanceof CollidingKey);
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(keyed);
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            var copy = (MyHashMap<Object, Integer>) in.readObject();
+            assertEquals(new HashMap<>(keyed), new HashMap<>(copy));
+            assertEquals(keys.size() - 1, copy.remove(keys.get(keys.size() - 1)));
+        }
+    }
+
+    @Test
+    public void testCursor() {
+        MyHashMap<Object, Integer> map = new MyHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < 3000; i++) {
+            map.put(i % 10 == 0 ? new CollidingKey(i % 200) : i, i);
+        }
+        Map<Object, Integer> expected = new HashMap<>(map);
+        var cursor = map.cursor();
+        assertThrows(IllegalStateException.class, cursor::key);
+        Map<Object, Integer> seen = new HashMap<>();
+        while (cursor.advance()) {
+            seen.put(cursor.key(), cursor.value());
+            if (cursor.key() instanceof CollidingKey) {
+                cursor.remove();
+                assertThrows(IllegalStateException.class, cursor::value);
+            } else {
+                assertEquals(cursor.value(), cursor.setValue(cursor.value() + 1));
+            }
+        }
+        assertFalse(cursor.advance());
+        assertEquals(expected, seen);
+        assertEquals(expected.size() - 20, map.size());
+
+        var snapshot = map.copyOnWriteClone();
+        cursor.reset();
+        int count = 0;
+        while (cursor.advance()) {
+            assertEquals(cursor.value(), cursor.setValue(0));
+            count++;
+        }
+        assertEquals(map.size(), count);
+        map.forEach((key, value) -> assertEquals(0, value));
+        snapshot.forEach((key, value) -> assertEquals(expected.get(key) + 1, value));
+
+        assertThrows(ConcurrentModificationException.class, () -> map.forEach((key, value) -> map.put(-key.hashCode() - 1, 0)));
+    }
+
+    @Test
+    public void testFailFastIterators() throws NoSuchFieldException, IllegalAccessException {
+        MyHashMap<Integer, Integer> map = new MyHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, i);
+        }
+        assertThrows(ConcurrentModificationException.class, () -> {
+            for (var key : map.keySet()) {
+                map.put(key + 100, key);
+            }
+        });
+        assertThrows(ConcurrentModificationException.class, () -> {
+            for (var value : map.values()) {
+                map.remove(value);
+            }
+        });
+        var iterator = map.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+        iterator.next();
         map.clear();
-        assertTrue(map.isEmpty());
-        assertTrue(map.keySet().isEmpty());
-        assertTrue(map.values().isEmpty());
-        assertTrue(map.entrySet().isEmpty());
+        assertThrows(ConcurrentModificationException.class, iterator::remove);
+        assertThrows(ConcurrentModificationException.class, iterator::next);
+
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        assertThrows(ConcurrentModificationException.class, () -> map.keySet().spliterator()
+                .forEachRemaining(key -> map.put(-key - 1, key)));
+        assertThrows(ConcurrentModificationException.class, () -> map.values().spliterator()
+                .tryAdvance(map::remove));
+        var cursor = map.cursor();
+        cursor.advance();
+        cursor.remove();
+        assertTrue(cursor.advance());
+        map.put(1000, 1000);
+        assertThrows(ConcurrentModificationException.class, cursor::advance);
+
+        // замена значения при обходе разделённых таблиц не делает шаг переноса и обход не прерывает
+        Field oldTableField = MyHashMap.class.getDeclaredField("oldTable");
+        oldTableField.setAccessible(true);
+        map.clear();
+        for (int i = 0; oldTableField.get(map) == null; i++) {
+            map.put(i, i);
+        }
+        var snapshot = map.copyOnWriteClone();
+        for (var entry : map.entrySet()) {
+            entry.setValue(-1);
+        }
+        assertTrue(map.values().stream().allMatch(value -> value == -1));
+        assertNotNull(oldTableField.get(map));
+        assertFalse(snapshot.containsValue(-1));
     }
 
     @Test
-    public void testContainsMethods() {
-        var testEntity = new TestEntity(18, TestEntity.Sex.M);
-        map.put(100000, testEntity);
-        assertTrue(map.containsKey(100000));
-        assertTrue(map.containsValue(testEntity));
-        map.remove(100000);
-        assertFalse(map.containsKey(100000));
-        assertFalse(map.containsValue(testEntity));
+    public void testBatchMethods() {
+        for (boolean incremental : new boolean[]{false, true}) {
+            MyHashMap<Object, Integer> map = new MyHashMap<>(16, 0.75f, incremental);
+            Object[] keys = new Object[3000];
+            Integer[] values = new Integer[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = i % 10 == 0 ? new CollidingKey(i % 300) : i == 1 ? null : i;
+                values[i] = i;
+            }
+            map.putAll(keys, values);
+            assertEquals(keys.length - 300 + 30, map.size());
+            Map<Object, Integer> expected = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                expected.put(keys[i], values[i]);
+            }
+            assertEquals(expected, new HashMap<>(map));
+            for (int i = 0; i < 100; i++) {
+                map.put(-i - 1, i);
+            }
+
+            Object[] lookups = new Object[500];
+            for (int i = 0; i < lookups.length; i++) {
+                int id = random.nextInt(4000) - 500;
+                lookups[i] = id % 10 == 0 ? new CollidingKey(id % 400) : id == 1 ? null : id;
+            }
+            Integer[] out = new Integer[lookups.length];
+            int found = map.getAll(lookups, out);
+            int expectedFound = 0;
+            for (int i = 0; i < lookups.length; i++) {
+                assertEquals(map.getOrDefault(lookups[i], null), out[i]);
+                if (map.containsKey(lookups[i]))
+                    expectedFound++;
+            }
+            assertEquals(expectedFound, found);
+        }
+        var map = new MyHashMap<Integer, Integer>();
+        map.putAll(new Integer[]{1, 2, 1}, new Integer[]{1, 2, 3});
+        assertEquals(3, map.get(1));
+        map.putAll(new Integer[]{2, 1, 1, 5}, new Integer[]{20, 10, 11, 50});
+        assertEquals(11, map.get(1));
+        assertEquals(20, map.get(2));
+        assertEquals(50, map.get(5));
+        assertEquals(3, map.size());
+        assertThrows(IllegalArgumentException.class, () -> map.putAll(new Integer[]{1}, new Integer[0]));
+        assertThrows(IllegalArgumentException.class, () -> map.getAll(new Integer[]{1}, new Integer[0]));
     }
 }
@@ -0,0 +1,121 @@
+package map;
+
+import org.example.map.MySwissHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MySwissHashMapTest extends AbstractMapTest {
+
+    @Override
+    protected <K, V> Map<K, V> createMap() {
+        return new MySwissHashMap<>();
+    }
+
+    @Test
+    public void testCapacity() {
+        MySwissHashMap<Integer, Integer> presized = new MySwissHashMap<>(1000);
+        int capacity = presized.getCapacity();
+        for (int i = 0; i < 1000; i++) {
+            presized.put(i, i);
+        }
+        assertEquals(capacity, presized.getCapacity());
+        assertEquals(0, Integer.bitCount(capacity) - 1);
+    }
+
+    /**
+     * Удаления с последующими вставками не должны разрастаться в таблицу из одних DELETED
+     */
+    @Test
+    public void testTombstones() {
+        MySwissHashMap<Integer, Integer> churn = new MySwissHashMap<>(64);
+        int capacity = churn.getCapacity();
+        for (int i = 0; i < 100000; i++) {
+            churn.put(i, i);
+            if (i >= 32) {
+                assertEquals(i - 32, churn.remove(i - 32));
+            }
+        }
+        assertEquals(32, churn.size());
+        assertEquals(capacity, churn.getCapacity());
+        for (int i = 100000 - 32; i < 100000; i++) {
+            assertEquals(i, churn.get(i));
+        }
+        var clone = churn.clone();
+        churn.clear();
+        assertEquals(32, clone.size());
+        assertTrue(churn.isEmpty());
+    }
+
+    @Test
+    public void testComputeModification() {
+        MySwissHashMap<Integer, Integer> counts = new MySwissHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            counts.merge(i % 10, 1, Integer::sum);
+        }
+        assertEquals(100, counts.get(3));
+        assertThrows(ConcurrentModificationException.class,
+                () -> counts.computeIfAbsent(-1, key -> counts.put(-2, 1)));
+        assertThrows(ConcurrentModificationException.class,
+                () -> counts.compute(1, (key, value) -> counts.remove(2)));
+    }
+
+    /**
+     * hashCode ключа меняется между записью и чтением, как у enum в другой JVM:
+     * таблица после чтения должна быть разложена заново
+     */
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        MySwissHashMap<Object, Integer> original = new MySwissHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            original.put(new ShiftedKey(i), i);
+            original.put("key" + i, -i);
+        }
+        original.put(null, 0);
+        for (int i = 0; i < 500; i++) {
+            original.remove("key" + i);
+        }
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(original);
+        }
+        Map<Object, Integer> expected = new HashMap<>(original);
+        MySwissHashMap<Object, Integer> copy;
+        ShiftedKey.shift = 0x5bd1e995;
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (MySwissHashMap<Object, Integer>) in.readObject();
+        } finally {
+            ShiftedKey.shift = 0;
+        }
+        assertEquals(expected.size(), copy.size());
+        ShiftedKey.shift = 0x5bd1e995;
+        try {
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, copy.get(new ShiftedKey(i)));
+            }
+            assertEquals(expected, new HashMap<>(copy));
+            assertEquals(-999, copy.remove("key999"));
+            copy.put("key0", 1);
+            assertEquals(expected.size(), copy.size());
+        } finally {
+            ShiftedKey.shift = 0;
+        }
+    }
+
+    /**
+     * hashCode зависит от общего сдвига, который тест меняет
+     */
+    private record ShiftedKey(int id) implements Serializable {
+        private static int shift;
+
+        @Override
+        public int hashCode() {
+            return id * 31 + shift;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package map;
+
+import org.example.map.Codec;
+import org.example.map.OffHeapHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapHashMapTest {
+    private final Random random = new Random(3);
+
+    @Test
+    public void testCRUDMethods() {
+        try (OffHeapHashMap<String, String> map = new OffHeapHashMap<>(Codec.STRING, Codec.STRING)) {
+            assertNull(map.put("ключ", "значение"));
+            assertEquals("значение", map.put("ключ", "😀 emoji"));
+            assertEquals("😀 emoji", map.get("ключ"));
+            assertNull(map.get("нет"));
+            assertTrue(map.containsKey("ключ"));
+            assertNull(map.put("", "empty key"));
+            assertEquals("empty key", map.get(""));
+            assertEquals(2, map.size());
+            assertEquals("😀 emoji", map.remove("ключ"));
+            assertNull(map.remove("ключ"));
+            assertThrows(NullPointerException.class, () -> map.put(null, "value"));
+            assertThrows(NullPointerException.class, () -> map.put("key", null));
+            map.clear();
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Map<Integer, String> expected = new HashMap<>();
+        try (OffHeapHashMap<Integer, String> map = new OffHeapHashMap<>(Codec.INTEGER, Codec.STRING, 0, 4096)) {
+            for (int i = 0; i < 200000; i++) {
+                int key = random.nextInt(5000);
+                switch (random.nextInt(3)) {
+                    case 0 -> assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+                    case 1 -> assertEquals(expected.remove(key), map.remove(key));
+                    default -> assertEquals(expected.get(key), map.get(key));
+                }
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected, map);
+            assertEquals(expected.hashCode(), map.hashCode());
+
+            for (Map.Entry<Integer, String> entry : map.entrySet()) {
+                entry.setValue(entry.getValue() + "!");
+                expected.put(entry.getKey(), expected.get(entry.getKey()) + "!");
+            }
+            assertEquals(expected, map);
+        }
+    }
+
+    /**
+     * Перезапись одних и тех же ключей не должна бесконечно растить слабы
+     */
+    @Test
+    public void testCompaction() {
+        try (OffHeapHashMap<Long, Long> map = new OffHeapHashMap<>(Codec.LONG, Codec.LONG, 1000, 1 << 16)) {
+            for (long i = 0; i < 1000; i++) {
+                map.put(i, 0L);
+            }
+            long allocated = map.getAllocatedBytes();
+            for (long round = 1; round <= 200; round++) {
+                for (long i = 0; i < 1000; i++) {
+                    assertEquals(i * (round - 1), map.put(i, i * round));
+                }
+            }
+            assertTrue(map.getAllocatedBytes() <= allocated * 4, allocated + " -> " + map.getAllocatedBytes());
+            for (long i = 0; i < 1000; i++) {
+                assertEquals(i * 200, map.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testLargeRecordsAndClose() {
+        OffHeapHashMap<Integer, String> map = new OffHeapHashMap<>(Codec.INTEGER, Codec.STRING, 16, 64);
+        var large = "x".repeat(1000);
+        map.put(1, large);
+        map.put(2, "small");
+        assertEquals(large, map.get(1));
+        assertEquals("small", map.get(2));
+        map.close();
+        map.close();
+        assertThrows(IllegalStateException.class, () -> map.get(1));
+        assertThrows(IllegalStateException.class, () -> map.put(3, "value"));
+    }
+}
@@ -0,0 +1,123 @@
+package map;
+
+import map.AbstractMapTest.CollidingKey;
+import org.example.map.PersistentHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentHashMapTest {
+    private final Random random = new Random();
+
+    /**
+     * Случайные with/without против HashMap. Каждая сотая версия сохраняется вместе с копией HashMap,
+     * и в конце все сохранённые версии должны остаться такими, какими были
+     */
+    @Test
+    public void testVersions() {
+        PersistentHashMap<Object, Integer> map = PersistentHashMap.empty();
+        Map<Object, Integer> expected = new HashMap<>();
+        List<PersistentHashMap<Object, Integer>> versions = new ArrayList<>();
+        List<Map<Object, Integer>> snapshots = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            int id = random.nextInt(3000);
+            Object key = id % 5 == 0 ? new CollidingKey(id % 40) : id == 1 ? null : id;
+            if (random.nextInt(3) == 0) {
+                var next = map.without(key);
+                assertEquals(expected.containsKey(key), next != map);
+                expected.remove(key);
+                map = next;
+            } else {
+                Integer value = i;
+                map = map.with(key, value);
+                expected.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+            if (i % 100 == 0) {
+                versions.add(map);
+                snapshots.add(new HashMap<>(expected));
+            }
+        }
+        assertEquals(expected, map);
+        for (var entry : expected.entrySet()) {
+            assertSame(entry.getValue(), map.get(entry.getKey()));
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(snapshots.get(i), new HashMap<>(versions.get(i)));
+            assertEquals(snapshots.get(i).size(), versions.get(i).size());
+        }
+        for (var key : expected.keySet()) {
+            map = map.without(key);
+        }
+        assertTrue(map.isEmpty());
+        assertFalse(map.entrySet().iterator().hasNext());
+    }
+
+    @Test
+    public void testReadContract() {
+        Integer value = 1000;
+        var map = PersistentHashMap.<String, Integer>empty().with("a", value).with("b", 2);
+        assertSame(map, map.with("a", value));
+        assertSame(map, map.without("c"));
+        assertThrows(NoSuchElementException.class, () -> map.get("c"));
+        assertEquals(0, map.getOrDefault("c", 0));
+        assertTrue(map.containsValue(value));
+        assertFalse(map.containsValue(new Integer(1000)));
+        assertThrows(UnsupportedOperationException.class, () -> map.put("c", 3));
+        assertThrows(UnsupportedOperationException.class, () -> map.entrySet().iterator().next().setValue(0));
+    }
+
+    @Test
+    public void testTransient() {
+        var base = PersistentHashMap.<Object, Integer>empty().with(-1, -1).with(new CollidingKey(1), 1);
+        var builder = base.asTransient();
+        for (int i = 0; i < 10000; i++) {
+            builder.put(i, i);
+            builder.put(new CollidingKey(i % 30), i);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            builder.remove(i);
+        }
+        builder.remove(new CollidingKey(1)).remove(-2);
+        assertEquals(5000 + 29 + 1, builder.size());
+        var result = builder.persistent();
+        assertThrows(IllegalStateException.class, () -> builder.put(1, 1));
+        assertEquals(2, base.size());
+        assertEquals(1, base.get(new CollidingKey(1)));
+        assertEquals(5030, result.size());
+        assertEquals(1, result.get(1));
+        assertFalse(result.containsKey(2));
+        assertFalse(result.containsKey(new CollidingKey(1)));
+
+        var second = result.asTransient().put(2, 2).persistent();
+        assertFalse(result.containsKey(2));
+        assertEquals(2, second.get(2));
+        assertEquals(new HashMap<>(result), new HashMap<>(PersistentHashMap.copyOf(new HashMap<>(result))));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        var map = PersistentHashMap.<String, Integer>empty();
+        for (int i = 0; i < 1000; i++) {
+            map = map.with("key" + i, i);
+        }
+        map = map.with("Aa", -1).with("BB", -2).with(null, 0);
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(map);
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            var copy = (PersistentHashMap<String, Integer>) in.readObject();
+            assertEquals(new HashMap<>(map), new HashMap<>(copy));
+            assertEquals(-2, copy.get("BB"));
+        }
+    }
+}